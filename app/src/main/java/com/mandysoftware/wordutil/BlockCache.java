@@ -0,0 +1,26 @@
+package com.mandysoftware.wordutil;
+
+// Keeps recently inflated blocks (.idx chunks, .wap buckets) in memory so that
+// repeated queries that land on the same block don't have to read and inflate it again.
+//
+// The cache is bounded by the total number of decoded bytes it holds rather than by the
+// number of entries, since the block sizes vary a lot between dictionaries.
+// When the budget is exceeded, the least recently used blocks are evicted first.
+public class BlockCache extends SizedLruCache<Integer, byte []>
+{
+    public BlockCache(long capacityBytes)
+    {
+        super(capacityBytes);
+    }
+
+    @Override
+    protected long sizeOf(byte [] block)
+    {
+        return block.length;
+    }
+
+    public synchronized int getBlockCount()
+    {
+        return getEntryCount();
+    }
+}
@@ -0,0 +1,139 @@
+package com.mandysoftware.wordutil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+
+// Random access to the compressed blocks of a dictionary file (.idx or .wap).
+//
+// By default, each read is a positional read on the file channel into a new array. In
+// memory-mapped mode, the whole file is mapped once and blocks are inflated directly out of
+// the mapping, which saves the read system calls and the intermediate copy on every query.
+// If the file can't be mapped (too large for a single mapping, or the platform refuses),
+// we quietly fall back to the regular reads; see isMemoryMapped().
+//
+// Either way, reads never touch a shared file position, so any number of threads can read
+// from the same BlockFile at once.
+public class BlockFile
+{
+    final File file;
+    final FileInputStream inputStream;
+    final FileChannel channel;
+    final long fileSize;
+
+    // How much inflateStart() reads for the code tables at the start of a deflate block.
+    static final int INFLATE_START_SLACK = 1024;
+
+    MappedByteBuffer mappedBuffer = null;
+
+    public BlockFile(File file, boolean memoryMapped) throws IOException
+    {
+        this.file = file;
+        inputStream = new FileInputStream(file);
+        channel = inputStream.getChannel();
+        fileSize = file.length();
+
+        if (memoryMapped && fileSize > 0 && fileSize <= Integer.MAX_VALUE)
+        {
+            try
+            {
+                mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            }
+            catch (IOException err)
+            {
+                mappedBuffer = null;
+            }
+        }
+    }
+
+    public BlockFile(File file) throws IOException
+    {
+        this(file, false);
+    }
+
+    public void close() throws IOException
+    {
+        // There is no way to unmap explicitly; the mapping goes away once it's collected.
+        mappedBuffer = null;
+        inputStream.close();
+    }
+
+    public boolean isMemoryMapped()
+    {
+        return mappedBuffer != null;
+    }
+
+    public long size()
+    {
+        return fileSize;
+    }
+
+    public byte [] read(long position, int length) throws IOException
+    {
+        byte [] bytes = new byte[length];
+
+        if (mappedBuffer != null)
+        {
+            ByteBuffer view = mappedBuffer.duplicate();
+
+            view.position((int) position);
+            view.get(bytes);
+
+            return bytes;
+        }
+
+        // Positional reads leave the channel's own position alone, which is what makes
+        // concurrent reads safe without any locking.
+        ByteBuffer target = ByteBuffer.wrap(bytes);
+
+        while (target.hasRemaining())
+        {
+            int nBytes = channel.read(target, position + target.position());
+
+            if (nBytes < 0)
+            {
+                throw new IOException("Unexpected end of file in " + file.getName() + ".");
+            }
+        }
+
+        return bytes;
+    }
+
+    public int readInt(long position) throws IOException
+    {
+        if (mappedBuffer != null)
+        {
+            return mappedBuffer.duplicate().order(ByteOrder.BIG_ENDIAN).getInt((int) position);
+        }
+
+        return ByteBuffer.wrap(read(position, 4)).order(ByteOrder.BIG_ENDIAN).getInt();
+    }
+
+    // Inflates the compressed block that occupies [start, end) in the file.
+    public byte [] inflate(long start, long end) throws IOException, DataFormatException
+    {
+        if (mappedBuffer != null)
+        {
+            return Compression.Inflate(mappedBuffer, (int) start, (int) (end - start));
+        }
+
+        return Compression.Inflate(read(start, (int) (end - start)));
+    }
+
+    // Inflates just the first `maxLength` bytes of the compressed block that occupies
+    // [start, end) in the file, reading only about as much of the block as that takes.
+    // Returns fewer bytes if the block is shorter, or if the start of it wasn't enough.
+    public byte [] inflateStart(long start, long end, int maxLength)
+            throws IOException, DataFormatException
+    {
+        // After the code tables, no symbol takes more than two bytes of input.
+        int length = (int) Math.min(end - start, 2L * maxLength + INFLATE_START_SLACK);
+
+        return Compression.InflateStart(read(start, length), maxLength);
+    }
+}
@@ -0,0 +1,178 @@
+package com.mandysoftware.wordutil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+
+// Browses the word list alphabetically around a word: the words just before and after it,
+// and scrolling from there in either direction, for an "index" view of the dictionary.
+//
+// The cursor is an ordinal into the word list. It keeps the decoded words of the last few
+// chunks it touched, so scrolling back and forth across a chunk boundary doesn't decode
+// either chunk again.
+public class BrowseCursor
+{
+    // The current chunk and the ones on either side of it.
+    static final int DECODED_CHUNK_COUNT = 3;
+
+    final IdxReader reader;
+    final LinkedHashMap<Integer, List<String>> decodedChunks =
+            new LinkedHashMap<Integer, List<String>>(DECODED_CHUNK_COUNT * 2, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, List<String>> eldest)
+                {
+                    return size() > DECODED_CHUNK_COUNT;
+                }
+            };
+
+    long position;
+
+    BrowseCursor(IdxReader reader, long position)
+    {
+        this.reader = reader;
+        this.position = clamp(position);
+    }
+
+    long clamp(long ordinal)
+    {
+        return Math.max(0, Math.min(ordinal, reader.countWords() - 1));
+    }
+
+    static byte [] sortKey(String word)
+    {
+        return word.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // A cursor at the given word, or at the word that would come right after it
+    // if it isn't in the list.
+    static BrowseCursor at(IdxReader reader, String word) throws IOException, DataFormatException
+    {
+        BrowseCursor cursor = new BrowseCursor(reader, 0);
+        int chunkCount = reader.entries.size();
+
+        if (chunkCount == 0 || word.isEmpty())
+        {
+            return cursor;
+        }
+
+        IdxReader.Bounds bounds = reader.findIndexBounds(word);
+        int firstChunk = bounds.bound_a == -1 ? 0 : bounds.bound_a;
+        int lastChunk = bounds.bound_b == -1 || bounds.bound_b < firstChunk ?
+                chunkCount - 1 : bounds.bound_b;
+        byte [] target = sortKey(word);
+
+        for (int idxChunk = firstChunk; idxChunk <= lastChunk; idxChunk += 1)
+        {
+            List<String> words = cursor.chunkWords(idxChunk);
+
+            for (int i = 0; i < words.size(); i += 1)
+            {
+                if (IdxWriter.compareUnsigned(sortKey(words.get(i)), target) >= 0)
+                {
+                    cursor.position = reader.entries.cumulative[idxChunk] + i;
+
+                    return cursor;
+                }
+            }
+        }
+
+        // Past the last word we looked at.
+        cursor.position = cursor.clamp(reader.entries.cumulative[lastChunk + 1]);
+
+        return cursor;
+    }
+
+    List<String> chunkWords(int idxChunk) throws IOException, DataFormatException
+    {
+        List<String> words = decodedChunks.get(idxChunk);
+
+        if (words == null)
+        {
+            words = reader.readChunkWords(idxChunk);
+            decodedChunks.put(idxChunk, words);
+        }
+
+        return words;
+    }
+
+    // The words with ordinals [from, to), clamped to the word list.
+    public ArrayList<String> words(long from, long to) throws IOException, DataFormatException
+    {
+        from = Math.max(from, 0);
+        to = Math.min(to, reader.countWords());
+
+        ArrayList<String> result = new ArrayList<>((int) Math.max(to - from, 0));
+        long ordinal = from;
+
+        while (ordinal < to)
+        {
+            int idxChunk = reader.entries.findChunk(ordinal);
+            long chunkStart = reader.entries.cumulative[idxChunk];
+            List<String> words = chunkWords(idxChunk);
+            int end = (int) Math.min(to - chunkStart, words.size());
+
+            if (end <= ordinal - chunkStart)
+            {
+                throw new DataFormatException("Chunk " + idxChunk + " is shorter than expected.");
+            }
+
+            result.addAll(words.subList((int) (ordinal - chunkStart), end));
+            ordinal = chunkStart + end;
+        }
+
+        return result;
+    }
+
+    public long getPosition()
+    {
+        return position;
+    }
+
+    public void setPosition(long ordinal)
+    {
+        position = clamp(ordinal);
+    }
+
+    // The word at the cursor, or null if the word list is empty.
+    public String current() throws IOException, DataFormatException
+    {
+        ArrayList<String> result = words(position, position + 1);
+
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    // Up to `count` words right before the cursor, in word list order.
+    public ArrayList<String> before(int count) throws IOException, DataFormatException
+    {
+        return words(position - count, position);
+    }
+
+    // Up to `count` words right after the cursor.
+    public ArrayList<String> after(int count) throws IOException, DataFormatException
+    {
+        return words(position + 1, position + 1 + count);
+    }
+
+    // The `count` words on either side of the cursor, with the word at the cursor
+    // in the middle.
+    public ArrayList<String> around(int count) throws IOException, DataFormatException
+    {
+        return words(position - count, position + count + 1);
+    }
+
+    // Moves the cursor by `delta` words (back if negative), stopping at either end.
+    // Returns how far it actually moved.
+    public long scroll(long delta)
+    {
+        long previous = position;
+
+        position = clamp(position + delta);
+
+        return position - previous;
+    }
+}
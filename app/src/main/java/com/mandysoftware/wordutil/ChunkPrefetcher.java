@@ -0,0 +1,143 @@
+package com.mandysoftware.wordutil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+
+// Decodes every chunk of a word list on the shared fork-join pool, a few chunks ahead
+// of whoever is consuming them.
+//
+// At most `window` chunks are being decoded or waiting to be consumed at any time,
+// so a full pass over the word list only ever holds that many chunks in memory, however
+// slow the consumer is. In ordered mode the chunks come out in word list order; otherwise
+// they come out as soon as they're ready.
+public class ChunkPrefetcher implements Closeable
+{
+    // One decoded chunk.
+    public static class Chunk
+    {
+        public final int index;
+        public final long firstOrdinal;
+        public final List<String> words;
+
+        Chunk(int index, long firstOrdinal, List<String> words)
+        {
+            this.index = index;
+            this.firstOrdinal = firstOrdinal;
+            this.words = words;
+        }
+    }
+
+    final IdxReader reader;
+    final boolean ordered;
+    final int window;
+
+    // Ordered mode waits on the oldest task first; unordered mode on whichever is done.
+    final ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+    final ExecutorCompletionService<Chunk> completion;
+    int inFlight = 0;
+    int nextChunk = 0;
+
+    public ChunkPrefetcher(IdxReader reader, boolean ordered, int window)
+    {
+        this.reader = reader;
+        this.ordered = ordered;
+        this.window = Math.max(1, window);
+
+        completion = ordered ? null : new ExecutorCompletionService<Chunk>(Parallel.getPool());
+    }
+
+    public ChunkPrefetcher(IdxReader reader, boolean ordered)
+    {
+        this(reader, ordered, Parallel.getParallelism() + 1);
+    }
+
+    Chunk decode(int idxChunk) throws IOException, DataFormatException
+    {
+        List<String> words = IdxReader.splitWords(reader.inflateChunk(idxChunk),
+                (int) reader.entries.count[idxChunk]);
+
+        return new Chunk(idxChunk, reader.entries.cumulative[idxChunk], words);
+    }
+
+    void fill()
+    {
+        while (inFlight < window && nextChunk < reader.entries.size())
+        {
+            final int idxChunk = nextChunk;
+
+            if (ordered)
+            {
+                pending.add(Parallel.submit(() -> decode(idxChunk)));
+            }
+            else
+            {
+                pending.add(completion.submit(() -> decode(idxChunk)));
+            }
+
+            inFlight += 1;
+            nextChunk += 1;
+        }
+    }
+
+    // The next decoded chunk, or null once every chunk has been returned.
+    public Chunk next() throws IOException, DataFormatException
+    {
+        fill();
+
+        if (inFlight == 0)
+        {
+            return null;
+        }
+
+        Future<Chunk> future;
+
+        if (ordered)
+        {
+            future = pending.poll();
+        }
+        else
+        {
+            try
+            {
+                future = completion.take();
+            }
+            catch (InterruptedException err)
+            {
+                Thread.currentThread().interrupt();
+
+                throw new InterruptedIOException("Interrupted while waiting for chunks.");
+            }
+
+            pending.remove(future);
+        }
+
+        inFlight -= 1;
+
+        Chunk chunk = Parallel.get(future);
+
+        // Keep the pool busy while the caller works on this chunk.
+        fill();
+
+        return chunk;
+    }
+
+    // Cancels the chunks that haven't been consumed yet.
+    @Override
+    public void close()
+    {
+        for (Future<Chunk> future : pending)
+        {
+            future.cancel(false);
+        }
+
+        pending.clear();
+        inFlight = 0;
+        nextChunk = reader.entries.size();
+    }
+}
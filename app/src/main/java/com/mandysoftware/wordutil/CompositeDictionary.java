@@ -10,8 +10,11 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.zip.DataFormatException;
 
@@ -28,6 +31,17 @@ public class CompositeDictionary {
     // Sleep time for our background thread while polling for commands.
     final static int BACKGROUND_THREAD_POLL_SLEEP_TIME = 50;
 
+    // How many more suggestions to fetch each time the user scrolls to the end of the list.
+    final static int SUGGEST_MORE_PAGE_SIZE = 50;
+
+    // Typo-tolerant suggestions allow one typo in short words and two in longer ones.
+    final static int FUZZY_LONG_WORD_LENGTH = 6;
+
+    // The most results a one-shot search, such as a crossword pattern, reports from each
+    // dictionary. Suggestions for what the user is typing use the reader's
+    // DEFAULT_SUGGESTION_COUNT_LIMIT instead.
+    final static int SEARCH_RESULT_LIMIT = 50;
+
     final ArrayList<DictionaryInfo> dictionaryList = new ArrayList<>();
     final ArrayList<Dictionary> loadedDictionaries = new ArrayList<>();
 
@@ -35,6 +49,13 @@ public class CompositeDictionary {
 
     final ConcurrentLinkedQueue<Command> commandQueue = new ConcurrentLinkedQueue<>();
 
+    // Parsed lookup results, shared between the UI and our thread; see getParsedEntry().
+    final WikiEntryCache parsedEntries = new WikiEntryCache();
+
+    // Builds the dictionaries' sidecar indexes, so that neither loading nor our thread
+    // ever has to wait for one.
+    final SidecarBuilder sidecarBuilder = new SidecarBuilder();
+
     boolean keepRunning = true;
 
     final File dictionaryRoot;
@@ -52,11 +73,35 @@ public class CompositeDictionary {
         UPDATE_LOCAL,
         LOAD_OFFLINE,
         LOOKUP,
+        LOOKUP_WORDS,
+        LOOKUP_LANGUAGES,
         SUGGEST,
+        SUGGEST_MORE,
+        SUGGEST_FUZZY,
+        SUGGEST_CONTAINING,
+        SUGGEST_PATTERN,
+        SUGGEST_SUFFIX,
+        SEARCH_TEXT,
+        SUGGEST_LINKING_TO,
+        CONFIGURE_BLOCK_CACHE,
         DOWNLOAD_DICTIONARY,
         DELETE_DICTIONARY
     }
 
+    // The argument of a LOOKUP_LANGUAGES command: a word, and the language codes of the
+    // {{=xx=}} sections of its definition that are wanted.
+    public static class LanguageLookup
+    {
+        public final String word;
+        public final Set<String> languages;
+
+        public LanguageLookup(String word, Set<String> languages)
+        {
+            this.word = word;
+            this.languages = languages;
+        }
+    }
+
     public static class Command
     {
         public CommandName commandName;
@@ -102,9 +147,39 @@ public class CompositeDictionary {
                     case LOOKUP:
                         backgroundLookup(command);
                         break;
+                    case LOOKUP_LANGUAGES:
+                        backgroundLookup(command);
+                        break;
+                    case LOOKUP_WORDS:
+                        backgroundLookupWords(command);
+                        break;
                     case SUGGEST:
                         backgroundSuggest(command);
                         break;
+                    case SUGGEST_MORE:
+                        backgroundSuggestMore(command);
+                        break;
+                    case SUGGEST_FUZZY:
+                        backgroundSuggestFuzzy(command);
+                        break;
+                    case SUGGEST_CONTAINING:
+                        backgroundSuggestContaining(command);
+                        break;
+                    case SUGGEST_PATTERN:
+                        backgroundSuggestPattern(command);
+                        break;
+                    case SUGGEST_SUFFIX:
+                        backgroundSuggestSuffix(command);
+                        break;
+                    case SEARCH_TEXT:
+                        backgroundSearchText(command);
+                        break;
+                    case SUGGEST_LINKING_TO:
+                        backgroundSuggestLinkingTo(command);
+                        break;
+                    case CONFIGURE_BLOCK_CACHE:
+                        backgroundConfigureBlockCache(command);
+                        break;
                     case DOWNLOAD_DICTIONARY:
                         backgroundDownload(command);
                         break;
@@ -202,18 +277,30 @@ public class CompositeDictionary {
         @NonNull final DictionaryInfo dictionaryInfo;
         @NonNull final String wordPrefix;
         @NonNull final List<String> suggestions;
+        // True if these suggestions continue the previous ones for the same prefix
+        // (SUGGEST_MORE), so they should be appended to the list rather than replace it.
+        final boolean continued;
         @Nullable final Exception err;
 
         public SuggestResult(@NonNull DictionaryInfo dictionaryInfo,
                              @NonNull String wordPrefix, @NonNull List<String> suggestions,
+                             boolean continued,
                              @Nullable Exception err)
         {
             this.dictionaryInfo = dictionaryInfo;
             this.wordPrefix = wordPrefix;
             this.suggestions = suggestions;
+            this.continued = continued;
             this.err = err;
         }
 
+        public SuggestResult(@NonNull DictionaryInfo dictionaryInfo,
+                             @NonNull String wordPrefix, @NonNull List<String> suggestions,
+                             @Nullable Exception err)
+        {
+            this(dictionaryInfo, wordPrefix, suggestions, false, err);
+        }
+
         public @NonNull DictionaryInfo getDictionaryInfo()
         {
             return dictionaryInfo;
@@ -229,6 +316,11 @@ public class CompositeDictionary {
             return suggestions;
         }
 
+        public boolean isContinued()
+        {
+            return continued;
+        }
+
         public @Nullable Exception getErr()
         {
             return err;
@@ -274,6 +366,14 @@ public class CompositeDictionary {
         dictionaryCallbacks.add(callback);
     }
 
+    // The structure of a lookup result's definition (sections, headings, senses and links).
+    // Sections are parsed as they're accessed, and the parsed entry is cached, so showing
+    // the same result again doesn't parse it again. Safe to call from any thread.
+    public WikiEntry getParsedEntry(LookupResult result)
+    {
+        return parsedEntries.parse(result.dictionaryInfo.name, result.word, result.definition);
+    }
+
     // This function exits quickly, but it signals our thread to clean up and exit.
     public void close()
     {
@@ -282,6 +382,7 @@ public class CompositeDictionary {
         keepRunning = false;
 
         ourThread.interrupt();
+        sidecarBuilder.shutdown();
     }
 
     public static class DictionaryInfo
@@ -299,6 +400,12 @@ public class CompositeDictionary {
         boolean hasUpdate = false;
         // For managing dictionaries showing download progress. Progress is out of 100.
         int progress = 0;
+        // Whether to memory-map the dictionary files instead of seeking and reading
+        // for every query. Takes effect the next time the dictionary is loaded.
+        boolean memoryMapped = false;
+        // Byte budget for keeping recently inflated definition blocks in memory.
+        // Zero disables the cache. Post CONFIGURE_BLOCK_CACHE to apply a change while loaded.
+        long blockCacheSize = WapReader.DEFAULT_BLOCK_CACHE_SIZE;
 
         public DictionaryInfo(String name, String description)
         {
@@ -341,6 +448,26 @@ public class CompositeDictionary {
         {
             return progress;
         }
+
+        public boolean isMemoryMapped()
+        {
+            return memoryMapped;
+        }
+
+        public void setMemoryMapped(boolean memoryMapped)
+        {
+            this.memoryMapped = memoryMapped;
+        }
+
+        public long getBlockCacheSize()
+        {
+            return blockCacheSize;
+        }
+
+        public void setBlockCacheSize(long blockCacheSize)
+        {
+            this.blockCacheSize = blockCacheSize;
+        }
     }
 
     // Constructs a composite dictionary class.
@@ -353,10 +480,110 @@ public class CompositeDictionary {
         ourThread.start();
     }
 
-    // Runs in the background. Does a lookup of a word.
+    // Looks a word up in one dictionary, keeping only the given languages' sections
+    // unless `languages` is null. "Word not found" still counts as a success.
+    protected LookupResult lookupIn(Dictionary dictionary, String word,
+                                    Collection<String> languages)
+    {
+        try {
+            String definition = languages == null ?
+                    dictionary.lookup(word) : dictionary.lookup(word, languages);
+
+            return new LookupResult(dictionary.info,
+                    word, definition, true, null);
+        }
+        catch (IllegalArgumentException err)
+        {
+            if (err.getMessage().contains("Word not found"))
+            {
+                // Not bad. Just not found.
+                return new LookupResult(dictionary.info,
+                        word, "", false, null);
+            }
+            else
+            {
+                // Bad. Some other error.
+                return new LookupResult(dictionary.info,
+                        word, "", false, err);
+            }
+        }
+        catch (IOException|DataFormatException err)
+        {
+            // Bad. Some other error.
+            return new LookupResult(dictionary.info,
+                    word, "", false, err);
+        }
+    }
+
+    // Runs in the background. Does a lookup of a word, or for LOOKUP_LANGUAGES, of the
+    // sections of its definition in the given languages.
     protected void backgroundLookup(Command command)
     {
-        String word = (String) command.argument;
+        final String word;
+        final Set<String> languages;
+
+        if (command.argument instanceof LanguageLookup)
+        {
+            word = ((LanguageLookup) command.argument).word;
+            languages = ((LanguageLookup) command.argument).languages;
+        }
+        else
+        {
+            word = (String) command.argument;
+            languages = null;
+        }
+
+        int successCount = 0;
+        int totalCount = 0;
+
+        // The readers are safe to share between threads, so look the word up in every
+        // dictionary at once. The results still come out in dictionary order.
+        ArrayList<Parallel.Task<LookupResult>> tasks = new ArrayList<>();
+
+        for (final Dictionary dictionary : loadedDictionaries)
+        {
+            tasks.add(() -> lookupIn(dictionary, word, languages));
+        }
+
+        List<LookupResult> results;
+
+        try
+        {
+            results = Parallel.invokeAll(tasks);
+        }
+        catch (IOException|DataFormatException err)
+        {
+            // lookupIn() catches these itself, so only an interrupt ends up here.
+            Log.e(TAG, "Lookup of " + word + " was interrupted: " + err.getMessage());
+
+            return;
+        }
+
+        for (LookupResult result : results)
+        {
+            if (result.err == null)
+            {
+                successCount += 1;
+            }
+
+            totalCount += 1;
+        }
+
+        for (DictionaryCallback callback : dictionaryCallbacks)
+        {
+            callback.onDictionaryLookup(results, successCount, totalCount);
+        }
+    }
+
+    // Runs in the background. Looks up a whole list of words (a Collection<String>), such as
+    // a saved vocabulary set, with one batch lookup per dictionary.
+    //
+    // Every word gets a LookupResult from every dictionary, in dictionary order and then
+    // in the order of the list. The counts are of dictionaries, as with a single lookup.
+    @SuppressWarnings("unchecked")
+    protected void backgroundLookupWords(Command command)
+    {
+        final Collection<String> words = (Collection<String>) command.argument;
         int successCount = 0;
         int totalCount = 0;
 
@@ -364,36 +591,94 @@ public class CompositeDictionary {
 
         for (Dictionary dictionary : loadedDictionaries)
         {
-            LookupResult result;
+            try
+            {
+                WapReader.BatchResult batch = dictionary.lookupWords(words);
 
-            try {
-                String definition = dictionary.wapReader.lookupWord(word);
+                for (String word : new LinkedHashSet<>(words))
+                {
+                    String definition = batch.getDefinitions().get(word);
+
+                    results.add(new LookupResult(dictionary.info,
+                            word, definition == null ? "" : definition, definition != null,
+                            null));
+                }
 
-                result = new LookupResult(dictionary.info,
-                        word, definition, true, null);
                 successCount += 1;
             }
-            catch (IllegalArgumentException err)
+            catch (IOException|DataFormatException err)
+            {
+                for (String word : new LinkedHashSet<>(words))
+                {
+                    results.add(new LookupResult(dictionary.info, word, "", false, err));
+                }
+            }
+
+            totalCount += 1;
+        }
+
+        for (DictionaryCallback callback : dictionaryCallbacks)
+        {
+            callback.onDictionaryLookup(results, successCount, totalCount);
+        }
+    }
+
+    // Runs in the background. Finds suggestions for a word given a prefix.
+    protected void backgroundSuggest(Command command) {
+        String prefix = (String) command.argument;
+
+        suggestFromEach(prefix, dictionary -> {
+            List<String> suggestions = dictionary.suggestSession.suggest(prefix);
+
+            // Nothing with this exact spelling; try ignoring accents and apostrophes.
+            NormalizedIndex normalizedIndex = suggestions.isEmpty() ?
+                    dictionary.normalizedIndex() : null;
+
+            if (normalizedIndex != null)
             {
-                if (err.getMessage().contains("Word not found"))
+                suggestions = normalizedIndex.suggest(prefix,
+                        dictionary.idxReader.DEFAULT_SUGGESTION_COUNT_LIMIT);
+            }
+
+            return suggestions;
+        });
+    }
+
+    // Runs in the background. Fetches the next page of suggestions for the prefix given
+    // as the argument, continuing where the last SUGGEST or SUGGEST_MORE left off.
+    // If the prefix isn't the one last suggested, this starts over with the first page.
+    protected void backgroundSuggestMore(Command command) {
+        String prefix = (String) command.argument;
+
+        int successCount = 0;
+        int totalCount = 0;
+
+        ArrayList<SuggestResult> results = new ArrayList<>();
+
+        for (Dictionary dictionary : loadedDictionaries) {
+            SuggestResult result;
+
+            try {
+                List<String> suggestions;
+                boolean continued = prefix.equals(dictionary.suggestSession.getPrefix());
+
+                if (continued)
                 {
-                    // Not bad. Just not found.
-                    result = new LookupResult(dictionary.info,
-                            word, "", false, null);
-                    successCount += 1;
+                    suggestions = dictionary.suggestSession.suggestMore(SUGGEST_MORE_PAGE_SIZE);
                 }
                 else
                 {
-                    // Bad. Some other error.
-                    result = new LookupResult(dictionary.info,
-                            word, "", false, err);
+                    suggestions = dictionary.suggestSession.suggest(prefix, SUGGEST_MORE_PAGE_SIZE);
                 }
+
+                result = new SuggestResult(dictionary.info, prefix, suggestions, continued, null);
+
+                successCount += 1;
             }
             catch (IOException|DataFormatException err)
             {
-                // Bad. Some other error.
-                result = new LookupResult(dictionary.info,
-                        word, "", false, err);
+                // Return the empty list with the error that we caught.
+                result = new SuggestResult(dictionary.info, prefix, new ArrayList<>(), err);
             }
 
             results.add(result);
@@ -403,14 +688,19 @@ public class CompositeDictionary {
 
         for (DictionaryCallback callback : dictionaryCallbacks)
         {
-            callback.onDictionaryLookup(results, successCount, totalCount);
+            callback.onDictionarySuggest(results, successCount, totalCount);
         }
     }
 
-    // Runs in the background. Finds suggestions for a word given a prefix.
-    protected void backgroundSuggest(Command command) {
-        String prefix = (String) command.argument;
+    // One dictionary's part of a suggestion-style command: the words it has for the query.
+    interface SuggestQuery
+    {
+        List<String> suggest(Dictionary dictionary) throws IOException, DataFormatException;
+    }
 
+    // Runs the query on every loaded dictionary and reports all of their results to the
+    // callbacks at once. A dictionary that fails gets an empty list along with its error.
+    protected void suggestFromEach(String query, SuggestQuery suggestQuery) {
         int successCount = 0;
         int totalCount = 0;
 
@@ -420,16 +710,16 @@ public class CompositeDictionary {
             SuggestResult result;
 
             try {
-                List<String> suggestions = dictionary.idxReader.suggest(prefix);
+                List<String> suggestions = suggestQuery.suggest(dictionary);
 
-                result = new SuggestResult(dictionary.info, prefix, suggestions, null);
+                result = new SuggestResult(dictionary.info, query, suggestions, null);
 
                 successCount += 1;
             }
             catch (IOException|DataFormatException err)
             {
                 // Return the empty list with the error that we caught.
-                result = new SuggestResult(dictionary.info, prefix, new ArrayList<>(), err);
+                result = new SuggestResult(dictionary.info, query, new ArrayList<>(), err);
             }
 
             results.add(result);
@@ -443,6 +733,142 @@ public class CompositeDictionary {
         }
     }
 
+    // Runs in the background. Finds typo-tolerant suggestions for what the user has typed
+    // so far, for when the regular SUGGEST comes back empty.
+    protected void backgroundSuggestFuzzy(Command command) {
+        String prefix = (String) command.argument;
+        int maxDistance = prefix.length() < FUZZY_LONG_WORD_LENGTH ? 1 : 2;
+
+        suggestFromEach(prefix, dictionary -> dictionary.idxReader.suggestFuzzy(prefix,
+                maxDistance, true, dictionary.idxReader.DEFAULT_SUGGESTION_COUNT_LIMIT));
+    }
+
+    // The error a dictionary reports for a command that needs a sidecar index
+    // SidecarBuilder hasn't finished building yet.
+    static IOException notBuiltYet(Dictionary dictionary, String description)
+    {
+        return new IOException("The " + description + " of dictionary " +
+                dictionary.info.name + " hasn't been built yet.");
+    }
+
+    // Runs in the background. Finds headwords that contain what the user has typed anywhere,
+    // not just at the start, once the dictionary's trigram index has been built.
+    protected void backgroundSuggestContaining(Command command) {
+        String substring = (String) command.argument;
+
+        suggestFromEach(substring, dictionary -> {
+            TrigramIndex trigramIndex = dictionary.idxReader.openTrigramIndexIfBuilt();
+
+            if (trigramIndex == null)
+            {
+                throw notBuiltYet(dictionary, "trigram index");
+            }
+
+            return trigramIndex.search(substring,
+                    dictionary.idxReader.DEFAULT_SUGGESTION_COUNT_LIMIT);
+        });
+    }
+
+    // Runs in the background. Finds headwords that match a crossword-style pattern,
+    // where `?` is any one letter and `*` is any number of them.
+    protected void backgroundSuggestPattern(Command command) {
+        String pattern = (String) command.argument;
+
+        suggestFromEach(pattern, dictionary -> dictionary.idxReader.suggestPattern(pattern,
+                SEARCH_RESULT_LIMIT));
+    }
+
+    // Runs in the background. Finds headwords that end with the given letters,
+    // e.g. for finding rhymes, once the dictionary's suffix index has been built.
+    protected void backgroundSuggestSuffix(Command command) {
+        String suffix = (String) command.argument;
+
+        suggestFromEach(suffix, dictionary -> {
+            SuffixIndex suffixIndex = dictionary.idxReader.openSuffixIndexIfBuilt();
+
+            if (suffixIndex == null)
+            {
+                throw notBuiltYet(dictionary, "suffix index");
+            }
+
+            return suffixIndex.suggest(suffix, SEARCH_RESULT_LIMIT);
+        });
+    }
+
+    // Runs in the background. Finds the headwords whose definitions contain the words
+    // of the query, best matches first. All of the words have to be there, unless they're
+    // separated by OR ("apple OR pear"), in which case any of them will do.
+    protected void backgroundSearchText(Command command) {
+        String query = (String) command.argument;
+        boolean matchAll = true;
+        StringBuilder terms = new StringBuilder();
+
+        for (String part : query.trim().split("\\s+"))
+        {
+            if (part.equals("OR"))
+            {
+                matchAll = false;
+            }
+            else
+            {
+                terms.append(part).append(' ');
+            }
+        }
+
+        final String searchTerms = terms.toString();
+        final boolean isMatchAll = matchAll;
+
+        suggestFromEach(query, dictionary -> {
+            FullTextIndex fullTextIndex = dictionary.openFullTextIndexIfBuilt();
+
+            if (fullTextIndex == null)
+            {
+                throw notBuiltYet(dictionary, "full-text index");
+            }
+
+            return fullTextIndex.search(searchTerms, isMatchAll, SEARCH_RESULT_LIMIT);
+        });
+    }
+
+    // Runs in the background. Finds the headwords whose definitions link to the given word,
+    // i.e. reverse translations: "яблуко" finds "apple". Needs the dictionary's link index.
+    protected void backgroundSuggestLinkingTo(Command command) {
+        String target = (String) command.argument;
+
+        suggestFromEach(target, dictionary -> {
+            LinkIndex linkIndex = dictionary.wapReader.openLinkIndexIfBuilt();
+
+            if (linkIndex == null)
+            {
+                throw notBuiltYet(dictionary, "link index");
+            }
+
+            return linkIndex.linkingTo(target, SEARCH_RESULT_LIMIT);
+        });
+    }
+
+    // Runs in the background. Applies the block cache budget from the dictionary's info
+    // (see DictionaryInfo.setBlockCacheSize()) to the dictionary if it's loaded.
+    // The argument is the dictionary name.
+    protected void backgroundConfigureBlockCache(Command command)
+    {
+        String name = (String) command.argument;
+
+        for (Dictionary dictionary : loadedDictionaries)
+        {
+            if (dictionary.info.name.equals(name))
+            {
+                dictionary.wapReader.setBlockCacheSize(dictionary.info.blockCacheSize);
+
+                BlockCache cache = dictionary.wapReader.getBlockCache();
+
+                Log.i(TAG, "Block cache of " + name + ": " + cache.getCapacity() +
+                        " bytes; " + cache.getHits() + " hits, " + cache.getMisses() +
+                        " misses so far.");
+            }
+        }
+    }
+
     // Don't be fooled by the callbacks.
     // This method runs SYNCHRONOUSLY!!!
     // It will NOT return until the download either succeeds or fails.
@@ -607,6 +1033,9 @@ public class CompositeDictionary {
         String pathPrefix = getDictionaryPath(dictionaryRoot, name);
         String wapFilename = pathPrefix + ".wap";
 
+        // The files are about to be replaced under any sidecar build that's reading them.
+        sidecarBuilder.cancel(pathPrefix);
+
         // For the download progress on this one,
         // since it's two files but we need only one progress,
         // we have to start out by guessing the .idx file size.
@@ -677,6 +1106,9 @@ public class CompositeDictionary {
                     info.hasUpdate = false;
                     info.availableOffline = true;
                     info.progress = 0;
+
+                    // Installed; the sidecar indexes can be built while it waits to be loaded.
+                    sidecarBuilder.schedule(pathPrefix);
                 }
 
                 for (DictionaryCallback callback : dictionaryCallbacks)
@@ -706,10 +1138,19 @@ public class CompositeDictionary {
 
         Log.i(TAG, "Operation: delete " + name);
 
+        parsedEntries.removeDictionary(name);
+
         String pathPrefix = getDictionaryPath(dictionaryRoot, name);
         File wapFile = new File(pathPrefix + ".wap");
         File idxFile = new File(pathPrefix + ".idx");
 
+        sidecarBuilder.cancel(pathPrefix);
+
+        if (!Sidecar.deleteAll(idxFile, wapFile))
+        {
+            Log.w(TAG, "Could not delete all the sidecar indexes of " + name);
+        }
+
         if (wapFile.exists() && !wapFile.delete())
         {
             resultError = new IOException("Could not delete WAP file: " + wapFile.getPath());
@@ -809,17 +1250,85 @@ public class CompositeDictionary {
         final DictionaryInfo info;
         final WapReader wapReader;
         final IdxReader idxReader;
+        // Suggestions come in as the user types, so each one usually just extends the last.
+        final SuggestSession suggestSession;
+        // Null until it has been built and then opened; see openFullTextIndexIfBuilt().
+        FullTextIndex fullTextIndex = null;
 
-        public Dictionary(DictionaryInfo info, String pathPrefix) throws IOException
+        public Dictionary(DictionaryInfo info, String pathPrefix, boolean memoryMapped)
+                throws IOException
         {
             this.info = info;
-            wapReader = new WapReader(new File(pathPrefix + ".wap"));
-            idxReader = new IdxReader(new File(pathPrefix + ".idx"));
+            wapReader = new WapReader(new File(pathPrefix + ".wap"), memoryMapped);
+            idxReader = new IdxReader(new File(pathPrefix + ".idx"), memoryMapped);
+            suggestSession = idxReader.newSuggestSession();
+
+            wapReader.setBlockCacheSize(info.blockCacheSize);
+        }
+
+        public Dictionary(DictionaryInfo info, String pathPrefix) throws IOException
+        {
+            this(info, pathPrefix, info.memoryMapped);
+        }
+
+        // The normalized index, or null until SidecarBuilder has built it.
+        NormalizedIndex normalizedIndex()
+        {
+            try
+            {
+                return idxReader.openNormalizedIndexIfBuilt();
+            }
+            catch (IOException|DataFormatException err)
+            {
+                Log.w(TAG, "Could not open the normalized index of dictionary " + info.name +
+                        ": " + err.getMessage());
+
+                return null;
+            }
+        }
+
+        FullTextIndex openFullTextIndexIfBuilt() throws IOException, DataFormatException
+        {
+            if (fullTextIndex == null)
+            {
+                fullTextIndex = FullTextIndex.openIfBuilt(idxReader, wapReader);
+            }
+
+            return fullTextIndex;
+        }
+
+        // Opens the redirect table once SidecarBuilder has built it. Until then,
+        // lookups follow redirects one entry at a time.
+        void openRedirectTable()
+        {
+            try
+            {
+                wapReader.openRedirectTableIfBuilt();
+            }
+            catch (IOException|DataFormatException err)
+            {
+                Log.w(TAG, "Could not open the redirect table of dictionary " + info.name +
+                        ": " + err.getMessage());
+            }
         }
 
         public String lookup(String word) throws IOException, DataFormatException
         {
-            return wapReader.lookupWord(word);
+            openRedirectTable();
+
+            // Redirect entries are followed here, so the caller gets the definition
+            // without a second round trip through the command queue.
+            return wapReader.lookupFollowingRedirects(word, normalizedIndex());
+        }
+
+        // Only the sections of the definition in the given languages; the rest of it
+        // is never decoded.
+        public String lookup(String word, Collection<String> languages)
+                throws IOException, DataFormatException
+        {
+            openRedirectTable();
+
+            return wapReader.lookupFollowingRedirects(word, normalizedIndex(), languages);
         }
 
         public ArrayList<String> suggest(String prefix, int suggestionCountLimit)
@@ -828,8 +1337,23 @@ public class CompositeDictionary {
             return idxReader.suggest(prefix, suggestionCountLimit);
         }
 
+        public WapReader.BatchResult lookupWords(Collection<String> words)
+                throws IOException, DataFormatException
+        {
+            openRedirectTable();
+
+            // Redirects are followed here too, so a saved list shows the same definitions
+            // as looking each word up on its own.
+            return wapReader.lookupWordsFollowingRedirects(words, normalizedIndex());
+        }
+
         public void close() throws IOException
         {
+            if (fullTextIndex != null)
+            {
+                fullTextIndex.close();
+            }
+
             wapReader.close();
             idxReader.close();
         }
@@ -904,6 +1428,7 @@ public class CompositeDictionary {
         }
 
         loadedDictionaries.clear();
+        parsedEntries.clear();
 
         Log.i(TAG, "Loading dictionaries ...");
 
@@ -938,6 +1463,13 @@ public class CompositeDictionary {
 
                 Log.v(TAG, "Dictionary " + name + " index loaded. Running sanity check ...");
 
+                if (info.memoryMapped && !(dictionary.wapReader.isMemoryMapped() &&
+                        dictionary.idxReader.isMemoryMapped()))
+                {
+                    Log.w(TAG, "Dictionary " + name + " could not be fully memory-mapped; " +
+                            "using regular file reads instead.");
+                }
+
                 String first = dictionary.idxReader.firstWord();
 
                 Log.v(TAG, "First word of dictionary " + name + ": " + first);
@@ -989,9 +1521,18 @@ public class CompositeDictionary {
                     }
                 }
 
+                if (!Sidecar.deleteAll(idxFile, wapFile))
+                {
+                    Log.e(TAG, "Could not delete sidecar indexes for " + name);
+                }
+
                 continue;
             }
 
+            // Any sidecar indexes that are missing or out of date are built in the
+            // background; the dictionary works without them in the meantime.
+            sidecarBuilder.schedule(pathPrefix);
+
             Log.i(TAG, "Dictionary " + name + " loaded successfully.");
 
             loadedDictionaries.add(dictionary);
@@ -1,35 +1,119 @@
 package com.mandysoftware.wordutil;
 
 import java.io.ByteArrayOutputStream;
-import java.util.Vector;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
 public class Compression
 {
+    static final int INFLATE_BUFFER_SIZE = 1024;
+    static final int INPUT_BUFFER_SIZE = 8192;
+
     public static byte [] Inflate(byte [] compressedData) throws DataFormatException
     {
         Inflater inflater = new Inflater(true);
         inflater.setInput(compressedData);
 
+        return inflateAll(inflater, null, null);
+    }
+
+    // Inflates `length` compressed bytes starting at `offset` in the given buffer,
+    // which is typically a memory-mapped file. The buffer's position is left untouched.
+    // The compressed input is fed to the inflater in small pieces, so we never
+    // hold a heap copy of the whole compressed block.
+    public static byte [] Inflate(ByteBuffer compressedData, int offset, int length)
+            throws DataFormatException
+    {
+        if (compressedData.hasArray())
+        {
+            Inflater inflater = new Inflater(true);
+            inflater.setInput(compressedData.array(),
+                    compressedData.arrayOffset() + offset, length);
+
+            return inflateAll(inflater, null, null);
+        }
+
+        ByteBuffer input = compressedData.duplicate();
+
+        input.limit(offset + length);
+        input.position(offset);
+
+        return inflateAll(new Inflater(true), input, new byte[Math.min(length, INPUT_BUFFER_SIZE)]);
+    }
+
+    // Inflates only the first `maxLength` bytes of the data, or fewer if it runs out first.
+    // The data may be just the start of a compressed block: running out of input isn't an
+    // error here.
+    public static byte [] InflateStart(byte [] compressedData, int maxLength)
+            throws DataFormatException
+    {
+        Inflater inflater = new Inflater(true);
+        byte [] output = new byte[maxLength];
+        int total = 0;
+
+        inflater.setInput(compressedData);
+
+        try
+        {
+            while (total < maxLength && !inflater.finished())
+            {
+                int nBytes = inflater.inflate(output, total, maxLength - total);
+
+                if (nBytes == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                {
+                    break;
+                }
+
+                total += nBytes;
+            }
+        }
+        finally
+        {
+            inflater.end();
+        }
+
+        return Arrays.copyOf(output, total);
+    }
+
+    static byte [] inflateAll(Inflater inflater, ByteBuffer input, byte [] inputBuffer)
+            throws DataFormatException
+    {
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        byte [] tmp = new byte[1024];
+        byte [] tmp = new byte[INFLATE_BUFFER_SIZE];
 
         while (!inflater.finished())
         {
+            if (inflater.needsInput() && input != null && input.hasRemaining())
+            {
+                int nInput = Math.min(input.remaining(), inputBuffer.length);
+
+                input.get(inputBuffer, 0, nInput);
+                inflater.setInput(inputBuffer, 0, nInput);
+            }
+
             int nBytes = inflater.inflate(tmp);
 
             if (nBytes > 0)
             {
                 outputStream.write(tmp, 0, nBytes);
             }
+            else if (inflater.needsInput() && input != null && input.hasRemaining())
+            {
+                continue;
+            }
             else
             {
                 break;
             }
         }
 
-        if (!inflater.finished())
+        boolean finished = inflater.finished();
+
+        inflater.end();
+
+        if (!finished)
         {
             throw new DataFormatException("Could not uncompress the data.");
         }
@@ -0,0 +1,999 @@
+package com.mandysoftware.wordutil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.zip.DataFormatException;
+
+// Full-text search over the definitions: which headwords' entries contain these words.
+//
+// Scanning every .wap block per query is out of the question, so we keep an inverted index
+// in two sidecars next to the .wap file. It maps every term (a word of the definitions,
+// folded like NormalizedIndex.fold()) to the headwords whose entries contain it, as their
+// ordinals in the .idx word list, with how often it appears there.
+//
+// uk.wap.postings holds the postings of all the terms back to back, in binary. Each term's
+// list is impact-ordered: split into segments by how often the term appears in the entry,
+// most often first, and within a segment by ascending ordinal. A segment is the varint
+// count, the varint number of postings, then the ordinals as varint gaps. Since the best
+// postings of every list come first, a search can stop reading long before the end of
+// the lists; see search().
+//
+// uk.wap.text is the directory, in .idx format, one "term<TAB>df,offset,length" line per
+// term (base 36): how many entries contain the term, and where its list is in the postings.
+//
+// Both are built from a parallel pass over every entry, once per dictionary version, in the
+// background by SidecarBuilder. open() builds them on the calling thread if they're missing,
+// so CompositeDictionary only ever calls openIfBuilt().
+//
+// The postings are gathered in bounded runs that are sorted and spilled to temporary files,
+// then merged term by term, so building never holds more than one run in memory.
+public class FullTextIndex
+{
+    static final String SIDECAR_KIND = "text";
+    static final String POSTINGS_KIND = "postings";
+    static final char FIELD_SEPARATOR = ',';
+    static final int FIELD_RADIX = 36;
+
+    // Shorter terms are mostly noise (and match nearly everything); longer ones are
+    // mostly markup, file names and the like.
+    static final int MIN_TERM_LENGTH = 2;
+    static final int MAX_TERM_LENGTH = 32;
+
+    // How many postings a run gathers in memory before it's spilled: a few MB.
+    static final int RUN_POSTINGS = 1 << 19;
+
+    // How much of a list a search reads at a time.
+    static final int READ_SIZE = 4096;
+
+    // How many postings a search takes in before checking whether it can stop.
+    static final int BATCH_SIZE = 128;
+
+    // Scores are tf-idf in fixed point, so adding them up gives the same total in any order
+    // and ties are real ties.
+    static final double SCORE_SCALE = 1000.0;
+
+    // The query terms are tracked in a bit mask per candidate.
+    static final int MAX_QUERY_TERMS = 64;
+
+    final IdxReader source;
+    final IdxReader directory;
+    final BlockFile postings;
+
+    // A growable list of packed postings, to keep them unboxed.
+    static class Postings
+    {
+        long [] packed = new long[4];
+        int size = 0;
+
+        void add(long posting)
+        {
+            if (size == packed.length)
+            {
+                packed = Arrays.copyOf(packed, size * 2);
+            }
+
+            packed[size] = posting;
+            size += 1;
+        }
+    }
+
+    // A term's line in the directory.
+    static class Term
+    {
+        final int documentCount;
+        final long offset;
+        final long length;
+
+        Term(int documentCount, long offset, long length)
+        {
+            this.documentCount = documentCount;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    FullTextIndex(IdxReader source, IdxReader directory, BlockFile postings)
+    {
+        this.source = source;
+        this.directory = directory;
+        this.postings = postings;
+    }
+
+    // Whether both sidecars exist and are newer than both of the dictionary's files.
+    static boolean isFresh(IdxReader words, WapReader definitions)
+    {
+        File directoryFile = Sidecar.fileFor(definitions.inputFile, SIDECAR_KIND);
+        File postingsFile = Sidecar.fileFor(definitions.inputFile, POSTINGS_KIND);
+
+        return Sidecar.isFresh(directoryFile, definitions.inputFile) &&
+                Sidecar.isFresh(directoryFile, words.inputFile) &&
+                Sidecar.isFresh(postingsFile, definitions.inputFile) &&
+                Sidecar.isFresh(postingsFile, words.inputFile);
+    }
+
+    // Opens the full-text index of the dictionary if it has been built, or returns null.
+    public static FullTextIndex openIfBuilt(IdxReader words, WapReader definitions)
+            throws IOException, DataFormatException
+    {
+        return isFresh(words, definitions) ? open(words, definitions) : null;
+    }
+
+    // Opens the full-text index of the dictionary, building it first if it doesn't exist
+    // yet or is older than either of the dictionary's files.
+    public static FullTextIndex open(IdxReader words, WapReader definitions)
+            throws IOException, DataFormatException
+    {
+        File directoryFile = Sidecar.fileFor(definitions.inputFile, SIDECAR_KIND);
+
+        if (!isFresh(words, definitions))
+        {
+            build(words, definitions, directoryFile, new Sidecar.Build());
+        }
+
+        return new FullTextIndex(words, new IdxReader(directoryFile, words.isMemoryMapped()),
+                new BlockFile(Sidecar.fileFor(definitions.inputFile, POSTINGS_KIND),
+                        words.isMemoryMapped()));
+    }
+
+    public void close() throws IOException
+    {
+        directory.close();
+        postings.close();
+    }
+
+    static boolean isTermChar(int codePoint)
+    {
+        return Character.isLetterOrDigit(codePoint) || codePoint == '\'' ||
+                NormalizedIndex.APOSTROPHES.indexOf(codePoint) != -1;
+    }
+
+    // Counts the terms of the text into the map: runs of letters and digits (apostrophes
+    // included, as in "коров'як"), each folded on its own.
+    static void countTerms(String text, Map<String, Integer> counts)
+    {
+        int idx = 0;
+
+        while (idx < text.length())
+        {
+            while (idx < text.length() && !isTermChar(text.codePointAt(idx)))
+            {
+                idx += Character.charCount(text.codePointAt(idx));
+            }
+
+            int start = idx;
+
+            while (idx < text.length() && isTermChar(text.codePointAt(idx)))
+            {
+                idx += Character.charCount(text.codePointAt(idx));
+            }
+
+            if (idx - start >= MIN_TERM_LENGTH && idx - start <= MAX_TERM_LENGTH)
+            {
+                String term = NormalizedIndex.fold(text.substring(start, idx));
+
+                // Apostrophes only count inside a word.
+                while (term.startsWith("'"))
+                {
+                    term = term.substring(1);
+                }
+
+                while (term.endsWith("'"))
+                {
+                    term = term.substring(0, term.length() - 1);
+                }
+
+                if (term.length() >= MIN_TERM_LENGTH)
+                {
+                    Integer count = counts.get(term);
+
+                    counts.put(term, count == null ? 1 : count + 1);
+                }
+            }
+        }
+    }
+
+    // The distinct terms of a query, in the order they're given.
+    static ArrayList<String> queryTerms(String query)
+    {
+        HashMap<String, Integer> counts = new HashMap<>();
+        LinkedHashSet<String> terms = new LinkedHashSet<>();
+
+        for (String part : query.trim().split("\\s+"))
+        {
+            counts.clear();
+            countTerms(part, counts);
+            terms.addAll(counts.keySet());
+        }
+
+        return new ArrayList<>(terms);
+    }
+
+    static void writeVarint(OutputStream output, long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            output.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        output.write((int) value);
+    }
+
+    static long readVarint(InputStream input) throws IOException
+    {
+        long value = 0;
+
+        for (int shift = 0; ; shift += 7)
+        {
+            int b = input.read();
+
+            if (b == -1)
+            {
+                throw new EOFException();
+            }
+
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+    }
+
+    // The postings gathered so far, spilled to a temporary file every RUN_POSTINGS of them.
+    //
+    // A run file has the number of terms, then for each term in UTF-8 byte order: its
+    // UTF-8 length and bytes, the number of postings, and the postings in ascending ordinal
+    // order as varint (ordinal gap, count) pairs.
+    static class Runs
+    {
+        final File baseFile;
+        final int runPostings;
+        final ArrayList<File> files = new ArrayList<>();
+
+        HashMap<String, Postings> terms = new HashMap<>();
+        int size = 0;
+
+        Runs(File baseFile, int runPostings)
+        {
+            this.baseFile = baseFile;
+            this.runPostings = runPostings;
+        }
+
+        synchronized void add(int ordinal, Map<String, Integer> counts) throws IOException
+        {
+            for (Map.Entry<String, Integer> entry : counts.entrySet())
+            {
+                Postings postings = terms.get(entry.getKey());
+
+                if (postings == null)
+                {
+                    postings = new Postings();
+                    terms.put(entry.getKey(), postings);
+                }
+
+                postings.add(((long) ordinal << 32) | entry.getValue());
+                size += 1;
+            }
+
+            if (size >= runPostings)
+            {
+                spill();
+            }
+        }
+
+        void spill() throws IOException
+        {
+            if (size == 0)
+            {
+                return;
+            }
+
+            byte [][] keys = new byte[terms.size()][];
+            Postings [] lists = new Postings[terms.size()];
+            Integer [] order = new Integer[terms.size()];
+            int idx = 0;
+
+            for (Map.Entry<String, Postings> entry : terms.entrySet())
+            {
+                keys[idx] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                lists[idx] = entry.getValue();
+                order[idx] = idx;
+                idx += 1;
+            }
+
+            Arrays.sort(order, (a, b) -> IdxWriter.compareUnsigned(keys[a], keys[b]));
+
+            File file = new File(baseFile.getPath() + ".run" + files.size());
+
+            files.add(file);
+
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file))))
+            {
+                output.writeInt(keys.length);
+
+                for (int i : order)
+                {
+                    Postings postings = lists[i];
+                    long previous = -1;
+
+                    // The entries came in from several threads in no particular order.
+                    Arrays.sort(postings.packed, 0, postings.size);
+
+                    output.writeInt(keys[i].length);
+                    output.write(keys[i]);
+                    writeVarint(output, postings.size);
+
+                    for (int j = 0; j < postings.size; j += 1)
+                    {
+                        long ordinal = postings.packed[j] >>> 32;
+
+                        writeVarint(output, ordinal - previous - 1);
+                        writeVarint(output, (int) postings.packed[j]);
+                        previous = ordinal;
+                    }
+                }
+            }
+
+            terms = new HashMap<>();
+            size = 0;
+        }
+
+        void deleteFiles()
+        {
+            for (File file : files)
+            {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    // Reads a run file back a term at a time, for the merge.
+    static class RunReader implements Closeable
+    {
+        final DataInputStream input;
+        int termsLeft;
+        byte [] term = null;
+
+        RunReader(File file) throws IOException
+        {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            termsLeft = input.readInt();
+        }
+
+        // Moves on to the next term; returns false at the end of the run.
+        boolean next() throws IOException
+        {
+            if (termsLeft == 0)
+            {
+                term = null;
+
+                return false;
+            }
+
+            term = new byte[input.readInt()];
+            input.readFully(term);
+            termsLeft -= 1;
+
+            return true;
+        }
+
+        // Adds the term's postings to the list, packed in impact order:
+        // by descending count, then by ascending ordinal.
+        void readPostings(Postings postings) throws IOException
+        {
+            long count = readVarint(input);
+            long ordinal = -1;
+
+            for (long i = 0; i < count; i += 1)
+            {
+                ordinal += readVarint(input) + 1;
+                postings.add(((long) (Integer.MAX_VALUE - (int) readVarint(input)) << 32) |
+                        ordinal);
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            input.close();
+        }
+    }
+
+    static void build(IdxReader words, WapReader definitions, File directoryFile,
+            Sidecar.Build build) throws IOException, DataFormatException
+    {
+        build(words, definitions, directoryFile,
+                Sidecar.fileFor(definitions.inputFile, POSTINGS_KIND), RUN_POSTINGS, build);
+    }
+
+    static void build(IdxReader words, WapReader definitions, File directoryFile,
+            File postingsFile, int runPostings, final Sidecar.Build build)
+            throws IOException, DataFormatException
+    {
+        // The postings are by .idx ordinal, so the headwords can be read back with
+        // readSortedWords() and the results can be merged with the other searches.
+        final HashMap<String, Integer> ordinals = new HashMap<>(words.countWords() * 2);
+
+        words.forEachWord((ordinal, word) -> {
+            ordinals.put(word, (int) ordinal);
+
+            return !build.isCancelled();
+        }, true);
+
+        build.check();
+
+        final Runs runs = new Runs(postingsFile, runPostings);
+        final IOException [] failure = new IOException[1];
+
+        try
+        {
+            // Tokenising is the expensive part, and it happens outside the lock.
+            definitions.forEachEntry((word, block, start, end) -> {
+                Integer ordinal = ordinals.get(word);
+
+                if (ordinal == null)
+                {
+                    // The .idx and .wap don't always agree.
+                    return true;
+                }
+
+                HashMap<String, Integer> counts = new HashMap<>();
+
+                countTerms(new String(block, start, end - start, StandardCharsets.UTF_8),
+                        counts);
+
+                try
+                {
+                    runs.add(ordinal, counts);
+                }
+                catch (IOException err)
+                {
+                    synchronized (failure)
+                    {
+                        failure[0] = err;
+                    }
+
+                    return false;
+                }
+
+                return !build.isCancelled();
+            }, true);
+
+            build.check();
+
+            synchronized (failure)
+            {
+                if (failure[0] != null)
+                {
+                    throw failure[0];
+                }
+            }
+
+            ordinals.clear();
+            runs.spill();
+            merge(runs.files, directoryFile, postingsFile, build);
+        }
+        finally
+        {
+            runs.deleteFiles();
+        }
+    }
+
+    // Merges the runs into the two sidecars, one term at a time.
+    static void merge(ArrayList<File> runFiles, File directoryFile, File postingsFile,
+            Sidecar.Build build) throws IOException
+    {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, runFiles.size()),
+                (a, b) -> IdxWriter.compareUnsigned(a.term, b.term));
+        ArrayList<RunReader> readers = new ArrayList<>();
+        File tmpFile = new File(postingsFile.getPath() + ".tmp");
+        IdxWriter.SortedLines lines = new IdxWriter.SortedLines(directoryFile);
+        boolean success = false;
+
+        try
+        {
+            for (File file : runFiles)
+            {
+                RunReader reader = new RunReader(file);
+
+                readers.add(reader);
+
+                if (reader.next())
+                {
+                    queue.add(reader);
+                }
+            }
+
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmpFile))))
+            {
+                Postings postings = new Postings();
+
+                while (!queue.isEmpty())
+                {
+                    build.check();
+
+                    byte [] term = queue.peek().term;
+
+                    postings.size = 0;
+
+                    while (!queue.isEmpty() && Arrays.equals(queue.peek().term, term))
+                    {
+                        RunReader reader = queue.poll();
+
+                        reader.readPostings(postings);
+
+                        if (reader.next())
+                        {
+                            queue.add(reader);
+                        }
+                    }
+
+                    long offset = output.size();
+
+                    writeImpactOrdered(output, postings);
+
+                    lines.add(Sidecar.line(new String(term, StandardCharsets.UTF_8),
+                            Integer.toString(postings.size, FIELD_RADIX) + FIELD_SEPARATOR +
+                            Long.toString(offset, FIELD_RADIX) + FIELD_SEPARATOR +
+                            Long.toString(output.size() - offset, FIELD_RADIX)));
+                }
+            }
+
+            if (postingsFile.exists() && !postingsFile.delete())
+            {
+                throw new IOException("Could not replace " + postingsFile.getPath());
+            }
+
+            if (!tmpFile.renameTo(postingsFile))
+            {
+                throw new IOException("Could not rename " + tmpFile.getPath() + " to " +
+                        postingsFile.getPath());
+            }
+
+            // The directory goes in last: until it does, the index isn't fresh.
+            lines.close();
+            success = true;
+        }
+        finally
+        {
+            for (RunReader reader : readers)
+            {
+                reader.close();
+            }
+
+            if (!success)
+            {
+                lines.discard();
+
+                //noinspection ResultOfMethodCallIgnored
+                tmpFile.delete();
+            }
+        }
+    }
+
+    // Writes a term's list as segments of equal count, in the order readPostings() packed it.
+    static void writeImpactOrdered(OutputStream output, Postings postings) throws IOException
+    {
+        Arrays.sort(postings.packed, 0, postings.size);
+
+        int idx = 0;
+
+        while (idx < postings.size)
+        {
+            int key = (int) (postings.packed[idx] >>> 32);
+            int segmentEnd = idx;
+
+            while (segmentEnd < postings.size && (int) (postings.packed[segmentEnd] >>> 32) == key)
+            {
+                segmentEnd += 1;
+            }
+
+            writeVarint(output, Integer.MAX_VALUE - key);
+            writeVarint(output, segmentEnd - idx);
+
+            long previous = -1;
+
+            for (; idx < segmentEnd; idx += 1)
+            {
+                long ordinal = postings.packed[idx] & 0xFFFFFFFFL;
+
+                writeVarint(output, ordinal - previous - 1);
+                previous = ordinal;
+            }
+        }
+    }
+
+    // The term's line in the directory, or null if no entry contains it.
+    Term lookupTerm(String term) throws IOException, DataFormatException
+    {
+        ArrayList<String> values = Sidecar.lookup(directory, term, 1);
+
+        if (values.isEmpty())
+        {
+            return null;
+        }
+
+        String [] fields = values.get(0).split(String.valueOf(FIELD_SEPARATOR));
+
+        return new Term(Integer.parseInt(fields[0], FIELD_RADIX),
+                Long.parseLong(fields[1], FIELD_RADIX), Long.parseLong(fields[2], FIELD_RADIX));
+    }
+
+    // Reads a term's list a segment at a time, READ_SIZE bytes at a time.
+    class Cursor extends InputStream
+    {
+        final long end;
+        final long idf;
+
+        long position;
+        byte [] window = new byte[0];
+        int windowPos = 0;
+
+        // The score each of the current segment's postings adds, or 0 once the list is
+        // done, and how many of them are left.
+        long impact = 0;
+        long remaining = 0;
+        long ordinal = -1;
+
+        Cursor(Term term, int documentCount) throws IOException
+        {
+            position = term == null ? 0 : term.offset;
+            end = term == null ? 0 : term.offset + term.length;
+            idf = term == null ? 0 : Math.round(SCORE_SCALE *
+                    Math.log(1.0 + (double) documentCount / Math.max(1, term.documentCount)));
+
+            nextSegment();
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            if (windowPos == window.length)
+            {
+                if (position == end)
+                {
+                    return -1;
+                }
+
+                window = postings.read(position, (int) Math.min(READ_SIZE, end - position));
+                position += window.length;
+                windowPos = 0;
+            }
+
+            return window[windowPos++] & 0xFF;
+        }
+
+        void nextSegment() throws IOException
+        {
+            if (windowPos == window.length && position == end)
+            {
+                impact = 0;
+                remaining = 0;
+
+                return;
+            }
+
+            long count = readVarint(this);
+
+            // (1 + log tf) * idf, in fixed point like idf.
+            impact = Math.round((1.0 + Math.log(count)) * idf);
+            remaining = readVarint(this);
+            ordinal = -1;
+        }
+
+        int nextOrdinal() throws IOException
+        {
+            ordinal += readVarint(this) + 1;
+            remaining -= 1;
+
+            return (int) ordinal;
+        }
+    }
+
+    // A headword that some of the query's postings have been read for.
+    static class Candidate
+    {
+        final int ordinal;
+        long score = 0;
+        long termsSeen = 0;
+
+        Candidate(int ordinal)
+        {
+            this.ordinal = ordinal;
+        }
+    }
+
+    // Best first: higher scores, then earlier in the word list.
+    static final Comparator<Candidate> RANKING = (a, b) ->
+            a.score != b.score ? Long.compare(b.score, a.score) :
+            Integer.compare(a.ordinal, b.ordinal);
+
+    // The headwords whose entries contain all of the query's words (or any of them, if
+    // matchAll is false), best matches first, at most `countLimit` of them.
+    //
+    // Matches are ranked by tf-idf: a word counts for more the more often it appears in
+    // the entry and the fewer entries it appears in at all. Ties go in word list order.
+    //
+    // The lists are read best postings first, always from whichever list can add the most
+    // to a score next, and only the headwords met along the way are scored. The search
+    // stops as soon as no headword it hasn't finished scoring could still make the top
+    // `countLimit` (see isSettled()), which for a query of common words is usually long
+    // before the end of their lists.
+    public ArrayList<String> search(String query, boolean matchAll, int countLimit)
+            throws IOException, DataFormatException
+    {
+        ArrayList<String> terms = queryTerms(query);
+        ArrayList<String> result = new ArrayList<>();
+
+        if (terms.isEmpty() || countLimit <= 0)
+        {
+            return result;
+        }
+
+        if (terms.size() > MAX_QUERY_TERMS)
+        {
+            terms = new ArrayList<>(terms.subList(0, MAX_QUERY_TERMS));
+        }
+
+        int documentCount = Math.max(1, source.countWords());
+        Cursor [] cursors = new Cursor[terms.size()];
+
+        for (int i = 0; i < cursors.length; i += 1)
+        {
+            Term term = lookupTerm(terms.get(i));
+
+            if (term == null && matchAll)
+            {
+                return result;
+            }
+
+            cursors[i] = new Cursor(term, documentCount);
+        }
+
+        HashMap<Integer, Candidate> candidates = new HashMap<>();
+        int sinceCheck = 0;
+
+        while (true)
+        {
+            int next = -1;
+
+            for (int i = 0; i < cursors.length; i += 1)
+            {
+                if (cursors[i].impact > 0 &&
+                        (next == -1 || cursors[i].impact > cursors[next].impact))
+                {
+                    next = i;
+                }
+            }
+
+            if (next == -1)
+            {
+                break;
+            }
+
+            Cursor cursor = cursors[next];
+            long impact = cursor.impact;
+            long batch = Math.min(cursor.remaining, BATCH_SIZE);
+
+            // Once a list is done, a headword that wasn't in it can't match all the terms.
+            boolean unseenCanMatch = !matchAll || isEveryListLeft(cursors);
+
+            for (long i = 0; i < batch; i += 1)
+            {
+                int ordinal = cursor.nextOrdinal();
+                Candidate candidate = candidates.get(ordinal);
+
+                if (candidate == null)
+                {
+                    if (!unseenCanMatch || ordinal >= documentCount)
+                    {
+                        continue;
+                    }
+
+                    candidate = new Candidate(ordinal);
+                    candidates.put(ordinal, candidate);
+                }
+
+                candidate.score += impact;
+                candidate.termsSeen |= 1L << next;
+            }
+
+            if (cursor.remaining == 0)
+            {
+                cursor.nextSegment();
+            }
+
+            sinceCheck += batch;
+
+            // Checking is linear in the candidates, so it's done about as often as that
+            // many postings have been read.
+            if (sinceCheck >= Math.max(BATCH_SIZE, candidates.size()))
+            {
+                sinceCheck = 0;
+
+                if (isSettled(candidates, cursors, matchAll, countLimit))
+                {
+                    break;
+                }
+            }
+        }
+
+        ArrayList<Candidate> ranked = topFinished(candidates, cursors, matchAll, countLimit);
+
+        // Read the headwords in word list order, then put them back in ranked order.
+        int [] sorted = new int[ranked.size()];
+
+        for (int i = 0; i < ranked.size(); i += 1)
+        {
+            sorted[i] = ranked.get(i).ordinal;
+        }
+
+        Arrays.sort(sorted);
+
+        ArrayList<String> sortedWords = source.readSortedWords(sorted, sorted.length);
+
+        for (Candidate candidate : ranked)
+        {
+            result.add(sortedWords.get(Arrays.binarySearch(sorted, candidate.ordinal)));
+        }
+
+        return result;
+    }
+
+    static boolean isEveryListLeft(Cursor [] cursors)
+    {
+        for (Cursor cursor : cursors)
+        {
+            if (cursor.impact == 0)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // The most the candidate's score could still grow: what the lists it hasn't been seen
+    // in yet could add. -1 if it can't match any more (it needs all the terms, and one of
+    // the lists it's missing from is done).
+    static long remainingImpact(Candidate candidate, Cursor [] cursors, boolean matchAll)
+    {
+        long total = 0;
+
+        for (int i = 0; i < cursors.length; i += 1)
+        {
+            if ((candidate.termsSeen & (1L << i)) == 0)
+            {
+                if (matchAll && cursors[i].impact == 0)
+                {
+                    return -1;
+                }
+
+                total += cursors[i].impact;
+            }
+        }
+
+        return total;
+    }
+
+    // The best `countLimit` candidates whose scores are final, best first. Candidates that
+    // can't match any more are dropped along the way.
+    static ArrayList<Candidate> topFinished(HashMap<Integer, Candidate> candidates,
+            Cursor [] cursors, boolean matchAll, int countLimit)
+    {
+        // The worst of the best so far on top, to be replaced.
+        PriorityQueue<Candidate> best = new PriorityQueue<>(Math.min(countLimit, 1024),
+                Collections.reverseOrder(RANKING));
+        Iterator<Candidate> iterator = candidates.values().iterator();
+
+        while (iterator.hasNext())
+        {
+            Candidate candidate = iterator.next();
+            long remaining = remainingImpact(candidate, cursors, matchAll);
+
+            if (remaining == -1)
+            {
+                iterator.remove();
+            }
+            else if (remaining == 0)
+            {
+                if (best.size() < countLimit)
+                {
+                    best.add(candidate);
+                }
+                else if (RANKING.compare(candidate, best.peek()) < 0)
+                {
+                    best.poll();
+                    best.add(candidate);
+                }
+            }
+        }
+
+        ArrayList<Candidate> ranked = new ArrayList<>(best);
+
+        Collections.sort(ranked, RANKING);
+
+        return ranked;
+    }
+
+    // Whether the top `countLimit` are known: there are that many candidates with final
+    // scores, and nothing else, seen or not, could still outrank the last of them.
+    static boolean isSettled(HashMap<Integer, Candidate> candidates, Cursor [] cursors,
+            boolean matchAll, int countLimit)
+    {
+        ArrayList<Candidate> top = topFinished(candidates, cursors, matchAll, countLimit);
+
+        if (top.size() < countLimit)
+        {
+            return false;
+        }
+
+        Candidate last = top.get(top.size() - 1);
+
+        // A headword we haven't met yet could score at most what all the lists could add,
+        // and only if it's further on in every list that isn't done, so it can only tie
+        // with `last` from after the furthest ordinal read in the current segments.
+        if (!matchAll || isEveryListLeft(cursors))
+        {
+            long unseen = 0;
+            long after = -1;
+
+            for (Cursor cursor : cursors)
+            {
+                if (cursor.impact > 0)
+                {
+                    unseen += cursor.impact;
+                    after = Math.max(after, cursor.ordinal);
+                }
+            }
+
+            if (unseen > last.score || (unseen == last.score && last.ordinal > after))
+            {
+                return false;
+            }
+        }
+
+        for (Candidate candidate : candidates.values())
+        {
+            long remaining = remainingImpact(candidate, cursors, matchAll);
+
+            if (remaining > 0)
+            {
+                long bound = candidate.score + remaining;
+
+                if (bound > last.score ||
+                        (bound == last.score && candidate.ordinal < last.ordinal))
+                {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+}
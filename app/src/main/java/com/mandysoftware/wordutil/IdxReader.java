@@ -1,27 +1,40 @@
 package com.mandysoftware.wordutil;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
-import java.util.Scanner;
+import java.util.Random;
 import java.util.zip.DataFormatException;
 
 public class IdxReader {
     final int DEFAULT_SUGGESTION_COUNT_LIMIT = 10;
 
+    // Chunks inflate to roughly 200 kB each, so this keeps the last dozen or so around,
+    // which covers typing a word out one letter at a time with plenty of room to spare.
+    public static final long DEFAULT_CHUNK_CACHE_SIZE = 2 * 1024 * 1024;
+
     final File inputFile;
-    final FileInputStream inputStream;
+    final BlockFile blockFile;
     final long fileSize;
 
-    final ArrayList<IndexEntry.Suggest> entries = new ArrayList<>();
+    IndexEntry.SuggestTable entries = new IndexEntry.SuggestTable(0);
     long endofs = 0;
 
+    final BlockCache chunkCache = new BlockCache(DEFAULT_CHUNK_CACHE_SIZE);
+
+    // Opened on first use; see openNormalizedIndex() and openNormalizedIndexIfBuilt().
+    NormalizedIndex normalizedIndex = null;
+    TrigramIndex trigramIndex = null;
+    SuffixIndex suffixIndex = null;
+
     static class PeekPrefix implements Search.Peek
     {
         static final PeekPrefix Instance = new PeekPrefix();
@@ -62,66 +75,190 @@ public class IdxReader {
         }
     }
 
-    public IdxReader(File idxFile) throws IOException
+    // A place in the word list: a chunk index and a byte offset into its inflated data,
+    // pointing at the start of a line.
+    public static class Position
+    {
+        int chunk;
+        int offset;
+
+        public Position(int chunk, int offset)
+        {
+            this.chunk = chunk;
+            this.offset = offset;
+        }
+
+        public Position(Position other)
+        {
+            this(other.chunk, other.offset);
+        }
+
+        public void set(int chunk, int offset)
+        {
+            this.chunk = chunk;
+            this.offset = offset;
+        }
+
+        public int compareTo(Position other)
+        {
+            if (chunk != other.chunk)
+            {
+                return chunk < other.chunk ? -1 : 1;
+            }
+
+            return Integer.compare(offset, other.offset);
+        }
+    }
+
+    // A word that's within the edit distance of a fuzzy query.
+    static class FuzzyMatch
+    {
+        final String word;
+        final int distance;
+        final int chunk;
+        final int offset;
+
+        FuzzyMatch(String word, int distance, int chunk, int offset)
+        {
+            this.word = word;
+            this.distance = distance;
+            this.chunk = chunk;
+            this.offset = offset;
+        }
+    }
+
+    // Called for every word by forEachWord(). The ordinal is the word's position in the
+    // word list. Return false to stop early.
+    public interface WordVisitor
+    {
+        boolean visit(long ordinal, String word);
+    }
+
+    public IdxReader(File idxFile, boolean memoryMapped) throws IOException
     {
         inputFile = idxFile;
-        inputStream = new FileInputStream(idxFile);
+        blockFile = new BlockFile(idxFile, memoryMapped);
         fileSize = inputFile.length();
 
         readIndex();
     }
 
+    public IdxReader(File idxFile) throws IOException
+    {
+        this(idxFile, false);
+    }
+
+    public boolean isMemoryMapped()
+    {
+        return blockFile.isMemoryMapped();
+    }
+
     public void close() throws IOException
     {
-        inputStream.close();
+        if (normalizedIndex != null)
+        {
+            normalizedIndex.close();
+            normalizedIndex = null;
+        }
+
+        if (trigramIndex != null)
+        {
+            trigramIndex.close();
+            trigramIndex = null;
+        }
+
+        if (suffixIndex != null)
+        {
+            suffixIndex.close();
+            suffixIndex = null;
+        }
+
+        chunkCache.clear();
+        blockFile.close();
+    }
+
+    // Sets the byte budget of the decoded chunk cache. Zero disables caching.
+    public void setChunkCacheSize(long capacityBytes)
+    {
+        chunkCache.setCapacity(capacityBytes);
+    }
+
+    // Exposed mainly so the hit/miss counters can be inspected.
+    public BlockCache getChunkCache()
+    {
+        return chunkCache;
     }
 
     protected void readIndex() throws IOException
     {
         long idxendofs = fileSize - 4;
-        byte [] fourBytes = new byte[4];
 
-        inputStream.getChannel().position(idxendofs);
-        inputStream.read(fourBytes);
-        endofs = java.nio.ByteBuffer.wrap(fourBytes)
-                .order(ByteOrder.BIG_ENDIAN).getInt();
+        endofs = Integer.toUnsignedLong(blockFile.readInt(idxendofs));
 
         int nidx = (int) ((idxendofs - endofs) / 16);
-        inputStream.getChannel().position(endofs);
-        entries.clear();
+        IndexEntry.SuggestTable table = new IndexEntry.SuggestTable(nidx);
 
-        DataInputStream dis = new DataInputStream(inputStream);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(
+                blockFile.read(endofs, (int) (idxendofs - endofs))));
         for (int i = 0; i < nidx; i += 1)
         {
             int ofs = dis.readInt();
             int cnt = dis.readInt();
             int key_a = dis.readInt();
             int key_b = dis.readInt();
-            entries.add(new IndexEntry.Suggest(key_a, key_b, ofs, cnt));
+            table.add(key_a, key_b, ofs, cnt);
         }
+
+        entries = table;
     }
 
-    Bounds findIndexBounds(String prefix)
+    static byte [] prefixBytes(String prefix)
+    {
+        return prefix.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // The key of the prefix: its first (up to) 4 bytes, in the top bytes of the key.
+    static long prefixKey(byte [] prefixRaw)
     {
-        byte [] prefixRaw = prefix.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
         long key = 0;
-        long mask = 0;
 
-        // We build the key and the mask which are both Long values to
-        // compare with in the binary search.
         for (int i = 0; i < prefixRaw.length && i < IndexEntry.SUGGEST_KEY_LENGTH; i += 1)
         {
             int shiftBits = 8 * (IndexEntry.SUGGEST_KEY_LENGTH - i - 1);
 
             key += (Byte.toUnsignedLong(prefixRaw[i]) << shiftBits);
-            mask |= (0xFFL << shiftBits);
         }
 
+        return key;
+    }
+
+    // The mask that covers just the bytes of the key that the prefix has.
+    static long prefixMask(byte [] prefixRaw)
+    {
+        long mask = 0;
+
+        for (int i = 0; i < prefixRaw.length && i < IndexEntry.SUGGEST_KEY_LENGTH; i += 1)
+        {
+            mask |= (0xFFL << (8 * (IndexEntry.SUGGEST_KEY_LENGTH - i - 1)));
+        }
+
+        return mask;
+    }
+
+    Bounds findIndexBounds(String prefix)
+    {
+        byte [] prefixRaw = prefixBytes(prefix);
+
+        // We build the key and the mask which are both Long values to
+        // compare with in the binary search.
+        long key = prefixKey(prefixRaw);
+        long mask = prefixMask(prefixRaw);
+
         // For a non-end-point, there is no guarantee that no words came before this prefix
         // that we're looking for, so we have to search using the L (<) and G (>) modes.
-        int ic_idx_a = Search.BinarySearch(entries, key, IndexEntry.Suggest.PeekA.Instance, mask,
+        int ic_idx_a = Search.BinarySearch(entries.keysA, key, IndexEntry.PeekKey.Instance, mask,
                 Search.Mode.L);
-        int ic_idx_b = Search.BinarySearch(entries, key, IndexEntry.Suggest.PeekB.Instance, mask,
+        int ic_idx_b = Search.BinarySearch(entries.keysB, key, IndexEntry.PeekKey.Instance, mask,
                 Search.Mode.G);
 
         // For the endpoints, however, the above will return -1 because for the
@@ -129,7 +266,7 @@ public class IdxReader {
         // so we check for that by matching LE (<=) instead which is inclusive.
         if (ic_idx_a == -1)
         {
-            ic_idx_a = Search.BinarySearch(entries, key, IndexEntry.Suggest.PeekA.Instance, mask,
+            ic_idx_a = Search.BinarySearch(entries.keysA, key, IndexEntry.PeekKey.Instance, mask,
                     Search.Mode.LE);
         }
 
@@ -137,7 +274,7 @@ public class IdxReader {
         // this prefix, so we likewise match with GE (>=) which includes the prefix entry.
         if (ic_idx_b == -1)
         {
-            ic_idx_b = Search.BinarySearch(entries, key, IndexEntry.Suggest.PeekB.Instance, mask,
+            ic_idx_b = Search.BinarySearch(entries.keysB, key, IndexEntry.PeekKey.Instance, mask,
                     Search.Mode.GE);
         }
 
@@ -146,90 +283,229 @@ public class IdxReader {
 
     Bounds findIndexBounds(int wordIndex)
     {
+        int foundIndex = entries.findChunk(wordIndex);
         int cumulativeCount = 0;
-        int foundIndex = -1;
 
-        for (int i = 0; i < entries.size(); i += 1)
+        if (foundIndex != -1)
         {
-            IndexEntry.Suggest entry = entries.get(i);
+            cumulativeCount = (int) entries.cumulative[foundIndex];
+        }
 
-            if (wordIndex >= cumulativeCount && wordIndex < cumulativeCount + entry.count)
-            {
-                foundIndex = i;
-                break;
-            }
+        return new Bounds(foundIndex, foundIndex, cumulativeCount);
+    }
+
+    // Returns the inflated bytes of the given chunk, from the cache if possible.
+    byte [] readChunk(int idxChunk) throws IOException, DataFormatException
+    {
+        byte [] rawBytes = chunkCache.get(idxChunk);
 
-            cumulativeCount += entry.count;
+        if (rawBytes != null)
+        {
+            return rawBytes;
         }
 
-        return new Bounds(foundIndex, foundIndex, cumulativeCount);
+        rawBytes = inflateChunk(idxChunk);
+
+        chunkCache.put(idxChunk, rawBytes);
+
+        return rawBytes;
     }
 
-    ArrayList<String> decodeChunksIntoLines(Bounds bounds, String prefix, int countLimit)
-            throws IOException, DataFormatException
+    // Inflates the given chunk without going through the cache, for one-off passes over
+    // the whole word list that would otherwise push everything useful out of it.
+    byte [] inflateChunk(int idxChunk) throws IOException, DataFormatException
     {
-        ArrayList<String> result;
-        String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+        long ofsChunkStart = entries.value[idxChunk];
+        long ofsChunkEnd = endofs;
 
-        if (countLimit > 0)
+        if (idxChunk + 1 < entries.size())
         {
-            result = new ArrayList<>(countLimit);
+            ofsChunkEnd = entries.value[idxChunk + 1];
         }
-        else
+
+        return blockFile.inflate(ofsChunkStart, ofsChunkEnd);
+    }
+
+    // Scans the words from `from` up to the end of `lastChunk`, adding the ones that
+    // match the prefix to `result` until it holds `countLimit` words.
+    //
+    // On return, `from` points just past the last word that was looked at, so that calling
+    // this again resumes where we left off. If `firstMatch` is given, it's set to the position
+    // of the first matching word that was found (and left alone if there was none).
+    void scanChunks(Utf8.Prefix matcher, Position from, int lastChunk, int countLimit,
+                    List<String> result, Position firstMatch)
+            throws IOException, DataFormatException
+    {
+        boolean foundFirst = false;
+
+        while (from.chunk <= lastChunk && from.chunk < entries.size() &&
+                result.size() < countLimit)
         {
-            result = new ArrayList<>();
+            byte [] rawBytes = readChunk(from.chunk);
+            int lineStart = from.offset;
+
+            // We match the prefix against the raw bytes of each line, and only the
+            // words that actually match get decoded into Strings.
+            while (lineStart < rawBytes.length && result.size() < countLimit)
+            {
+                int lineEnd = Utf8.lineEnd(rawBytes, lineStart);
+                int wordStart = Utf8.trimStart(rawBytes, lineStart, lineEnd);
+                int wordEnd = Utf8.trimEnd(rawBytes, wordStart, lineEnd);
+
+                // Note that prefix can be the empty string "" which is perfectly OK.
+                // In that case, all (non-empty) words will be matched.
+                //
+                if (wordEnd > wordStart && matcher.matches(rawBytes, wordStart, wordEnd))
+                {
+                    if (firstMatch != null && !foundFirst)
+                    {
+                        firstMatch.set(from.chunk, lineStart);
+                        foundFirst = true;
+                    }
+
+                    result.add(new String(rawBytes, wordStart, wordEnd - wordStart,
+                            StandardCharsets.UTF_8));
+                }
+
+                lineStart = lineEnd + 1;
+            }
+
+            if (lineStart < rawBytes.length)
+            {
+                from.offset = lineStart;
+            }
+            else
+            {
+                from.set(from.chunk + 1, 0);
+            }
         }
+    }
+
+    // All the words of one chunk, in order.
+    ArrayList<String> readChunkWords(int idxChunk) throws IOException, DataFormatException
+    {
+        ArrayList<String> result = new ArrayList<>((int) entries.count[idxChunk]);
+
+        scanChunks(new Utf8.Prefix(""), new Position(idxChunk, 0), idxChunk, Integer.MAX_VALUE,
+                result, null);
+
+        return result;
+    }
 
-        for (int idxChunk = bounds.bound_a; idxChunk <= bounds.bound_b; idxChunk += 1)
+    // Splits inflated chunk data into its (non-empty, trimmed) words.
+    static ArrayList<String> splitWords(byte [] rawBytes, int expectedCount)
+    {
+        ArrayList<String> result = new ArrayList<>(expectedCount);
+        int lineStart = 0;
+
+        while (lineStart < rawBytes.length)
         {
-            long ofsChunkStart = entries.get(idxChunk).value;
-            long ofsChunkEnd = endofs;
+            int lineEnd = Utf8.lineEnd(rawBytes, lineStart);
+            int wordStart = Utf8.trimStart(rawBytes, lineStart, lineEnd);
+            int wordEnd = Utf8.trimEnd(rawBytes, wordStart, lineEnd);
 
-            if (idxChunk + 1 < entries.size())
+            if (wordEnd > wordStart)
             {
-                ofsChunkEnd = entries.get(idxChunk + 1).value;
+                result.add(new String(rawBytes, wordStart, wordEnd - wordStart,
+                        StandardCharsets.UTF_8));
             }
 
-            byte [] compressedBytes = new byte[(int)(ofsChunkEnd - ofsChunkStart)];
+            lineStart = lineEnd + 1;
+        }
+
+        return result;
+    }
+
+    // Reads the words with the given ordinals, which must be in ascending order.
+    // Each chunk is decoded once, however many of the words are in it.
+    ArrayList<String> readSortedWords(int [] ordinals, int count)
+            throws IOException, DataFormatException
+    {
+        ArrayList<String> result = new ArrayList<>(count);
+        int idx = 0;
+
+        while (idx < count)
+        {
+            int idxChunk = entries.findChunk(ordinals[idx]);
 
-            inputStream.getChannel().position(ofsChunkStart);
-            inputStream.read(compressedBytes);
+            if (idxChunk == -1)
+            {
+                throw new IndexOutOfBoundsException("Word index " + ordinals[idx] +
+                        " is out of range.");
+            }
 
-            byte [] rawBytes = Compression.Inflate(compressedBytes);
-            String text = new String(rawBytes, StandardCharsets.UTF_8);
-            Scanner scanner = new Scanner(text);
+            byte [] rawBytes = readChunk(idxChunk);
+            long chunkStart = entries.cumulative[idxChunk];
+            long chunkEnd = entries.cumulative[idxChunk + 1];
+            long wordIndex = chunkStart;
+            int lineStart = 0;
 
-            while (scanner.hasNextLine() && result.size() < countLimit)
+            while (idx < count && ordinals[idx] < chunkEnd && lineStart < rawBytes.length)
             {
-                String line = scanner.nextLine();
-                String word = line.trim();
+                int lineEnd = Utf8.lineEnd(rawBytes, lineStart);
+                int wordStart = Utf8.trimStart(rawBytes, lineStart, lineEnd);
+                int wordEnd = Utf8.trimEnd(rawBytes, wordStart, lineEnd);
 
-                // Note that prefix can be the empty string "" which is perfectly OK.
-                // In that case, all words will be matched (i.e., the below 'continue'
-                // will never be reached, such that we add all words to the return list).
-                //
-                if (!word.toLowerCase(Locale.ROOT).startsWith(lowerPrefix))
+                lineStart = lineEnd + 1;
+
+                if (wordEnd == wordStart)
                 {
                     continue;
                 }
 
-                if (word.length() > 0)
+                String word = null;
+
+                // The same ordinal can be asked for more than once.
+                while (idx < count && ordinals[idx] == wordIndex)
                 {
+                    if (word == null)
+                    {
+                        word = new String(rawBytes, wordStart, wordEnd - wordStart,
+                                StandardCharsets.UTF_8);
+                    }
+
                     result.add(word);
+                    idx += 1;
                 }
-            }
 
-            scanner.close();
+                wordIndex += 1;
+            }
 
-            if (result.size() >= countLimit)
+            // The chunk had fewer words than its count says.
+            if (idx < count && ordinals[idx] < chunkEnd)
             {
-                break;
+                throw new DataFormatException("Chunk " + idxChunk + " is shorter than expected.");
             }
         }
 
         return result;
     }
 
+    ArrayList<String> decodeChunksIntoLines(Bounds bounds, String prefix, int countLimit)
+            throws IOException, DataFormatException
+    {
+        ArrayList<String> result;
+
+        if (countLimit > 0)
+        {
+            result = new ArrayList<>(countLimit);
+        }
+        else
+        {
+            result = new ArrayList<>();
+        }
+
+        if (bounds.bound_a == -1)
+        {
+            return result;
+        }
+
+        scanChunks(new Utf8.Prefix(prefix), new Position(bounds.bound_a, 0), bounds.bound_b,
+                countLimit, result, null);
+
+        return result;
+    }
+
     ArrayList<String> decodeChunksIntoLines(Bounds bounds, String prefix)
             throws IOException, DataFormatException
     {
@@ -249,22 +525,564 @@ public class IdxReader {
         return suggest(prefix, DEFAULT_SUGGESTION_COUNT_LIMIT);
     }
 
-    public int countWords()
+    // The bytes that every word in the chunk starts with, going by the chunk's key range,
+    // cut back to whole UTF-8 characters.
+    byte [] commonKeyPrefix(int idxChunk)
+    {
+        byte [] common = new byte[IndexEntry.SUGGEST_KEY_LENGTH];
+        int len = 0;
+
+        for (int i = 0; i < IndexEntry.SUGGEST_KEY_LENGTH; i += 1)
+        {
+            int shiftBits = 8 * (IndexEntry.SUGGEST_KEY_LENGTH - i - 1);
+            byte a = (byte) (entries.key_a[idxChunk] >>> shiftBits);
+            byte b = (byte) (entries.key_b[idxChunk] >>> shiftBits);
+
+            // A zero byte is padding for words shorter than the key.
+            if (a != b || a == 0)
+            {
+                break;
+            }
+
+            common[len] = a;
+            len += 1;
+        }
+
+        int whole = 0;
+
+        while (whole < len && whole + Utf8.sequenceLength(common[whole]) <= len)
+        {
+            whole += Utf8.sequenceLength(common[whole]);
+        }
+
+        byte [] result = new byte[whole];
+
+        System.arraycopy(common, 0, result, 0, whole);
+
+        return result;
+    }
+
+    // Could any word in the chunk be within the automaton's distance?
+    // We can only tell from what all of the chunk's words start with.
+    boolean canChunkMatch(Levenshtein automaton, int idxChunk, boolean prefixMode)
+    {
+        byte [] common = commonKeyPrefix(idxChunk);
+
+        return automaton.canMatchStartingWith(
+                Utf8.foldedCodePoints(new String(common, StandardCharsets.UTF_8)), prefixMode);
+    }
+
+    // Scans one chunk for fuzzy matches. For each distance, only the first `countLimit`
+    // matches are kept, since those are the only ones that can make the final cut.
+    List<FuzzyMatch> fuzzyScanChunk(Levenshtein automaton, int idxChunk, boolean prefixMode,
+                                    int countLimit)
+            throws IOException, DataFormatException
+    {
+        byte [] rawBytes = readChunk(idxChunk);
+        Levenshtein.SortedMatcher matcher = new Levenshtein.SortedMatcher(automaton, prefixMode);
+        int [] perDistance = new int[automaton.getMaxDistance() + 1];
+        ArrayList<FuzzyMatch> result = new ArrayList<>();
+        int lineStart = 0;
+
+        while (lineStart < rawBytes.length)
+        {
+            int lineEnd = Utf8.lineEnd(rawBytes, lineStart);
+            int wordStart = Utf8.trimStart(rawBytes, lineStart, lineEnd);
+            int wordEnd = Utf8.trimEnd(rawBytes, wordStart, lineEnd);
+
+            if (wordEnd > wordStart)
+            {
+                int distance = matcher.match(rawBytes, wordStart, wordEnd);
+
+                if (distance != -1 && perDistance[distance] < countLimit)
+                {
+                    perDistance[distance] += 1;
+                    result.add(new FuzzyMatch(
+                            new String(rawBytes, wordStart, wordEnd - wordStart,
+                                    StandardCharsets.UTF_8),
+                            distance, idxChunk, lineStart));
+                }
+            }
+
+            lineStart = lineEnd + 1;
+        }
+
+        return result;
+    }
+
+    // Typo-tolerant suggestions: words within `maxDistance` edits of `word`, closest first,
+    // and in word list order among equally close words.
+    //
+    // In prefix mode, the word is treated as something that's still being typed, and it's
+    // compared with the start of each word instead of the whole word.
+    //
+    // Chunks whose key range rules out any match are skipped; the rest are scanned
+    // in parallel on the shared fork-join pool, each one as a trie walk over its sorted
+    // words (see Levenshtein.SortedMatcher).
+    //
+    // A word of `maxDistance` characters or fewer is within the distance of nearly
+    // everything (in prefix mode, of literally everything), so those get no suggestions.
+    public ArrayList<String> suggestFuzzy(String word, int maxDistance, boolean prefixMode,
+                                          int suggestionCountLimit)
+            throws IOException, DataFormatException
+    {
+        final Levenshtein automaton = new Levenshtein(word, maxDistance);
+
+        if (automaton.query.length <= maxDistance)
+        {
+            return new ArrayList<>();
+        }
+
+        final boolean isPrefixMode = prefixMode;
+        final int countLimit = suggestionCountLimit;
+        ArrayList<Parallel.Task<List<FuzzyMatch>>> tasks = new ArrayList<>();
+
+        for (int idxChunk = 0; idxChunk < entries.size(); idxChunk += 1)
+        {
+            if (!canChunkMatch(automaton, idxChunk, prefixMode))
+            {
+                continue;
+            }
+
+            final int chunk = idxChunk;
+
+            tasks.add(() -> fuzzyScanChunk(automaton, chunk, isPrefixMode, countLimit));
+        }
+
+        ArrayList<FuzzyMatch> matches = new ArrayList<>();
+
+        for (List<FuzzyMatch> chunkMatches : Parallel.invokeAll(tasks))
+        {
+            matches.addAll(chunkMatches);
+        }
+
+        // The chunks came back in order, and the sort is stable,
+        // so equally close words stay in word list order.
+        Collections.sort(matches, (a, b) -> Integer.compare(a.distance, b.distance));
+
+        ArrayList<String> result = new ArrayList<>(Math.min(matches.size(),
+                Math.max(suggestionCountLimit, 0)));
+
+        for (int i = 0; i < matches.size() && i < suggestionCountLimit; i += 1)
+        {
+            result.add(matches.get(i).word);
+        }
+
+        return result;
+    }
+
+    public ArrayList<String> suggestFuzzy(String word, int maxDistance)
+            throws IOException, DataFormatException
+    {
+        return suggestFuzzy(word, maxDistance, false, DEFAULT_SUGGESTION_COUNT_LIMIT);
+    }
+
+    // The first `countLimit` words of one chunk that match the pattern.
+    List<String> patternScanChunk(WordPattern pattern, int idxChunk, int countLimit)
+            throws IOException, DataFormatException
+    {
+        byte [] rawBytes = readChunk(idxChunk);
+        ArrayList<String> result = new ArrayList<>();
+        int lineStart = 0;
+
+        while (lineStart < rawBytes.length && result.size() < countLimit)
+        {
+            int lineEnd = Utf8.lineEnd(rawBytes, lineStart);
+            int wordStart = Utf8.trimStart(rawBytes, lineStart, lineEnd);
+            int wordEnd = Utf8.trimEnd(rawBytes, wordStart, lineEnd);
+
+            if (wordEnd > wordStart && pattern.matches(rawBytes, wordStart, wordEnd))
+            {
+                result.add(new String(rawBytes, wordStart, wordEnd - wordStart,
+                        StandardCharsets.UTF_8));
+            }
+
+            lineStart = lineEnd + 1;
+        }
+
+        return result;
+    }
+
+    // Words that match a crossword-style pattern (see WordPattern), in word list order.
+    //
+    // If the pattern starts with some literal characters, only the chunks whose key range
+    // allows that prefix are looked at. The chunks are scanned in parallel, a pool's worth
+    // at a time, and we stop as soon as the chunks scanned so far have filled the limit,
+    // so a pattern with plenty of matches doesn't decode the whole word list.
+    public ArrayList<String> suggestPattern(String text, int suggestionCountLimit)
+            throws IOException, DataFormatException
     {
-        int result = 0;
+        final WordPattern pattern = new WordPattern(text);
+        final int countLimit = suggestionCountLimit;
+        ArrayList<String> result = new ArrayList<>();
+        int firstChunk = 0;
+        int lastChunk = entries.size() - 1;
+
+        if (countLimit <= 0)
+        {
+            return result;
+        }
+
+        if (!pattern.getLiteralPrefix().isEmpty())
+        {
+            Bounds bounds = findIndexBounds(pattern.getLiteralPrefix());
 
-        for (int i = 0; i < entries.size(); i += 1)
+            if (bounds.bound_a == -1)
+            {
+                return result;
+            }
+
+            firstChunk = bounds.bound_a;
+            lastChunk = bounds.bound_b;
+        }
+
+        int window = Parallel.getParallelism();
+
+        for (int idxChunk = firstChunk; idxChunk <= lastChunk && result.size() < countLimit;
+             idxChunk += window)
         {
-            result += entries.get(i).count;
+            ArrayList<Parallel.Task<List<String>>> tasks = new ArrayList<>(window);
+
+            for (int i = idxChunk; i <= lastChunk && i < idxChunk + window; i += 1)
+            {
+                final int chunk = i;
+
+                tasks.add(() -> patternScanChunk(pattern, chunk, countLimit));
+            }
+
+            for (List<String> chunkMatches : Parallel.invokeAll(tasks))
+            {
+                for (String word : chunkMatches)
+                {
+                    if (result.size() >= countLimit)
+                    {
+                        break;
+                    }
+
+                    result.add(word);
+                }
+            }
         }
 
         return result;
     }
 
+    public ArrayList<String> suggestPattern(String text) throws IOException, DataFormatException
+    {
+        return suggestPattern(text, DEFAULT_SUGGESTION_COUNT_LIMIT);
+    }
+
+    // The accent-, case- and apostrophe-insensitive index of this word list.
+    // Building it takes a pass over the whole word list, but only the first time.
+    public synchronized NormalizedIndex openNormalizedIndex() throws IOException, DataFormatException
+    {
+        if (normalizedIndex == null)
+        {
+            normalizedIndex = NormalizedIndex.open(this);
+        }
+
+        return normalizedIndex;
+    }
+
+    // Like openNormalizedIndex(), but never builds it: null until it has been built,
+    // e.g. by SidecarBuilder.
+    public synchronized NormalizedIndex openNormalizedIndexIfBuilt()
+            throws IOException, DataFormatException
+    {
+        if (normalizedIndex == null && NormalizedIndex.isFresh(this))
+        {
+            normalizedIndex = NormalizedIndex.open(this);
+        }
+
+        return normalizedIndex;
+    }
+
+    // Like suggest(), but ignores accents, case and which apostrophe is used.
+    public ArrayList<String> suggestNormalized(String prefix, int suggestionCountLimit)
+            throws IOException, DataFormatException
+    {
+        return openNormalizedIndex().suggest(prefix, suggestionCountLimit);
+    }
+
+    public ArrayList<String> suggestNormalized(String prefix) throws IOException, DataFormatException
+    {
+        return suggestNormalized(prefix, DEFAULT_SUGGESTION_COUNT_LIMIT);
+    }
+
+    // The trigram index of this word list, for substring searches.
+    // Like the normalized index, it's built the first time it's needed.
+    public synchronized TrigramIndex openTrigramIndex() throws IOException, DataFormatException
+    {
+        if (trigramIndex == null)
+        {
+            trigramIndex = TrigramIndex.open(this);
+        }
+
+        return trigramIndex;
+    }
+
+    // Like openTrigramIndex(), but never builds it: null until it has been built.
+    public synchronized TrigramIndex openTrigramIndexIfBuilt()
+            throws IOException, DataFormatException
+    {
+        if (trigramIndex == null && TrigramIndex.isFresh(this))
+        {
+            trigramIndex = TrigramIndex.open(this);
+        }
+
+        return trigramIndex;
+    }
+
+    // Headwords that contain the substring anywhere, ignoring accents and case,
+    // in word list order.
+    public ArrayList<String> suggestContaining(String substring, int suggestionCountLimit)
+            throws IOException, DataFormatException
+    {
+        return openTrigramIndex().search(substring, suggestionCountLimit);
+    }
+
+    // The reversed-word index of this word list, for suffix searches.
+    public synchronized SuffixIndex openSuffixIndex() throws IOException, DataFormatException
+    {
+        if (suffixIndex == null)
+        {
+            suffixIndex = SuffixIndex.open(this);
+        }
+
+        return suffixIndex;
+    }
+
+    // Like openSuffixIndex(), but never builds it: null until it has been built.
+    public synchronized SuffixIndex openSuffixIndexIfBuilt() throws IOException, DataFormatException
+    {
+        if (suffixIndex == null && SuffixIndex.isFresh(this))
+        {
+            suffixIndex = SuffixIndex.open(this);
+        }
+
+        return suffixIndex;
+    }
+
+    // Headwords that end with the suffix, ignoring case; see SuffixIndex.suggest().
+    public ArrayList<String> suggestBySuffix(String suffix, int suggestionCountLimit)
+            throws IOException, DataFormatException
+    {
+        return openSuffixIndex().suggest(suffix, suggestionCountLimit);
+    }
+
+    public ArrayList<String> suggestBySuffix(String suffix) throws IOException, DataFormatException
+    {
+        return suggestBySuffix(suffix, DEFAULT_SUGGESTION_COUNT_LIMIT);
+    }
+
+    // Returns a cursor for paging through every word that starts with the prefix.
+    public SuggestCursor suggestCursor(String prefix)
+    {
+        return new SuggestCursor(this, prefix);
+    }
+
+    // A cursor for browsing the word list alphabetically, starting at the given word
+    // (or where it would be, if it isn't in the list).
+    public BrowseCursor browse(String word) throws IOException, DataFormatException
+    {
+        return BrowseCursor.at(this, word);
+    }
+
+    // A cursor for browsing the word list, starting at the given ordinal.
+    public BrowseCursor browse(long ordinal)
+    {
+        return new BrowseCursor(this, ordinal);
+    }
+
+    // Starts a new suggestion session for a user typing out a word; see SuggestSession.
+    public SuggestSession newSuggestSession()
+    {
+        return new SuggestSession(this);
+    }
+
+    // Counts the words in one chunk that start with the prefix, without decoding them.
+    int countChunkMatches(Utf8.Prefix matcher, int idxChunk) throws IOException, DataFormatException
+    {
+        byte [] rawBytes = readChunk(idxChunk);
+        int count = 0;
+        int lineStart = 0;
+
+        while (lineStart < rawBytes.length)
+        {
+            int lineEnd = Utf8.lineEnd(rawBytes, lineStart);
+            int wordStart = Utf8.trimStart(rawBytes, lineStart, lineEnd);
+            int wordEnd = Utf8.trimEnd(rawBytes, wordStart, lineEnd);
+
+            if (wordEnd > wordStart && matcher.matches(rawBytes, wordStart, wordEnd))
+            {
+                count += 1;
+            }
+
+            lineStart = lineEnd + 1;
+        }
+
+        return count;
+    }
+
+    // The number of words that start with the prefix, e.g. to show how many there are
+    // before the user has scrolled through them.
+    //
+    // The matching words are contiguous in the word list. Between the key bounds, a binary
+    // search on the chunks' first words finds the chunk where they start and the one where
+    // they end, and every chunk strictly between those two holds only matching words, so
+    // its count is taken straight from the index. Only the two end chunks are inflated and
+    // counted, however many words match. When the prefix fits in the 4-byte keys, the
+    // search goes by the keys alone; otherwise it inflates just the start of each chunk it
+    // looks at (see firstWordKey()).
+    //
+    // The bounds and the key are worked out from the prefix folded one code point at
+    // a time, the way the matcher folds it, rather than with String.toLowerCase(), so the
+    // chunks counted from the index are the same ones the matcher would count in full.
+    public int countPrefix(String prefix) throws IOException, DataFormatException
+    {
+        if (prefix.isEmpty())
+        {
+            return countWords();
+        }
+
+        int [] codePoints = Utf8.foldedCodePoints(prefix);
+        String folded = new String(codePoints, 0, codePoints.length);
+        Bounds bounds = findIndexBounds(folded);
+
+        if (bounds.bound_a == -1 || bounds.bound_b < bounds.bound_a)
+        {
+            return 0;
+        }
+
+        byte [] prefixRaw = folded.getBytes(StandardCharsets.UTF_8);
+        Utf8.Prefix matcher = new Utf8.Prefix(prefix);
+
+        // The matches start in `first` (or at the start of the next chunk), and end in `last`.
+        int first = lastChunkStartingBefore(bounds.bound_a, bounds.bound_b, prefixRaw, false);
+        int last = lastChunkStartingBefore(first, bounds.bound_b, prefixRaw, true);
+        int count = countBoundaryChunk(matcher, prefixRaw, first);
+
+        if (last > first)
+        {
+            count += countBoundaryChunk(matcher, prefixRaw, last);
+        }
+
+        for (int idxChunk = first + 1; idxChunk < last; idxChunk += 1)
+        {
+            count += (int) entries.count[idxChunk];
+        }
+
+        return count;
+    }
+
+    // The last chunk in [from, to] whose first word sorts before the (folded) prefix, or
+    // with `orMatching`, before it or starting with it. Returns `from` if there's none.
+    int lastChunkStartingBefore(int from, int to, byte [] prefixRaw, boolean orMatching)
+            throws IOException, DataFormatException
+    {
+        long key = prefixKey(prefixRaw);
+        long mask = prefixMask(prefixRaw);
+        boolean keyCoversPrefix = prefixRaw.length <= IndexEntry.SUGGEST_KEY_LENGTH;
+
+        while (from < to)
+        {
+            int middle = (from + to + 1) >>> 1;
+            int comparison = keyCoversPrefix ?
+                    Long.compare(entries.key_a[middle] & mask, key) :
+                    comparePrefix(firstWordKey(middle), prefixRaw);
+
+            if (comparison < 0 || (orMatching && comparison == 0))
+            {
+                from = middle;
+            }
+            else
+            {
+                to = middle - 1;
+            }
+        }
+
+        return from;
+    }
+
+    // How much of a chunk firstWordKey() inflates to find its first word.
+    static final int FIRST_WORD_PEEK_LENGTH = 256;
+
+    // The chunk's first word as a sort key (see prefixBytes()). Only the start of the chunk
+    // is inflated, unless the word doesn't fit in it, and the chunk cache is left alone.
+    byte [] firstWordKey(int idxChunk) throws IOException, DataFormatException
+    {
+        long ofsChunkEnd = idxChunk + 1 < entries.size() ? entries.value[idxChunk + 1] : endofs;
+        byte [] rawBytes = blockFile.inflateStart(entries.value[idxChunk], ofsChunkEnd,
+                FIRST_WORD_PEEK_LENGTH);
+        int lineEnd = Utf8.lineEnd(rawBytes, 0);
+
+        if (lineEnd == rawBytes.length)
+        {
+            rawBytes = readChunk(idxChunk);
+            lineEnd = Utf8.lineEnd(rawBytes, 0);
+        }
+
+        int wordStart = Utf8.trimStart(rawBytes, 0, lineEnd);
+        int wordEnd = Utf8.trimEnd(rawBytes, wordStart, lineEnd);
+
+        return prefixBytes(new String(rawBytes, wordStart, wordEnd - wordStart,
+                StandardCharsets.UTF_8));
+    }
+
+    // Compares a sort key with a prefix: 0 if the key starts with it, or else the order
+    // of the two as unsigned bytes.
+    static int comparePrefix(byte [] sortKey, byte [] prefixRaw)
+    {
+        for (int i = 0; i < prefixRaw.length; i += 1)
+        {
+            if (i == sortKey.length)
+            {
+                return -1;
+            }
+
+            int difference = (sortKey[i] & 0xFF) - (prefixRaw[i] & 0xFF);
+
+            if (difference != 0)
+            {
+                return difference;
+            }
+        }
+
+        return 0;
+    }
+
+    // The number of words in one of countPrefix()'s end chunks that start with the
+    // (folded) prefix: from the index if the chunk's keys show they all do, or else by
+    // inflating the chunk and counting.
+    int countBoundaryChunk(Utf8.Prefix matcher, byte [] prefixRaw, int idxChunk)
+            throws IOException, DataFormatException
+    {
+        long key = prefixKey(prefixRaw);
+        long mask = prefixMask(prefixRaw);
+
+        if (prefixRaw.length <= IndexEntry.SUGGEST_KEY_LENGTH &&
+                (entries.key_a[idxChunk] & mask) == key && (entries.key_b[idxChunk] & mask) == key)
+        {
+            return (int) entries.count[idxChunk];
+        }
+
+        return countChunkMatches(matcher, idxChunk);
+    }
+
+    public int countWords()
+    {
+        return (int) entries.totalCount();
+    }
+
     public String readWord(int index) throws IOException, DataFormatException
     {
         Bounds bounds = findIndexBounds(index);
-        int wordsInChunk = (int) entries.get(bounds.bound_a).count;
+
+        if (bounds.bound_a == -1)
+        {
+            throw new IndexOutOfBoundsException("Word index " + index + " is out of range.");
+        }
+
         int subIndex = index - bounds.cumulative;
 
         // We just want to decode up to the subIndex word since that's all we need.
@@ -281,6 +1099,164 @@ public class IdxReader {
         return readWord(wordIndex);
     }
 
+    // Calls the visitor for every word in the word list, on the calling thread.
+    //
+    // The chunks are decoded in parallel, a few ahead of the visitor, and bypass the chunk
+    // cache (see ChunkPrefetcher). In ordered mode the visitor sees the words in word list
+    // order; otherwise it gets each chunk's words as soon as the chunk is ready, which keeps
+    // the pool busier when the visitor doesn't care about order. Within a chunk, words are
+    // always in order. Returns false if the visitor stopped early.
+    public boolean forEachWord(WordVisitor visitor, boolean ordered)
+            throws IOException, DataFormatException
+    {
+        ChunkPrefetcher prefetcher = new ChunkPrefetcher(this, ordered);
+
+        try
+        {
+            ChunkPrefetcher.Chunk chunk;
+
+            while ((chunk = prefetcher.next()) != null)
+            {
+                for (int i = 0; i < chunk.words.size(); i += 1)
+                {
+                    if (!visitor.visit(chunk.firstOrdinal + i, chunk.words.get(i)))
+                    {
+                        return false;
+                    }
+                }
+            }
+        }
+        finally
+        {
+            prefetcher.close();
+        }
+
+        return true;
+    }
+
+    public boolean forEachWord(WordVisitor visitor) throws IOException, DataFormatException
+    {
+        return forEachWord(visitor, true);
+    }
+
+    // Every word in word list order, decoded in the background a few chunks ahead.
+    public WordIterator iterateWords()
+    {
+        return new WordIterator(this);
+    }
+
+    // Draws `count` different words at random (or every word, if there aren't that many),
+    // in random order. The same seed always gives the same words.
+    //
+    // The ordinals are picked with Floyd's algorithm, which takes exactly one draw per word
+    // even when nearly every word is wanted, and then shuffled. They're grouped by chunk, so
+    // each chunk is decoded at most once however many words come from it, and the chunks
+    // can be decoded in parallel.
+    public ArrayList<String> randomWords(int count, long seed, boolean parallel)
+            throws IOException, DataFormatException
+    {
+        int wordCount = countWords();
+        int n = Math.max(0, Math.min(count, wordCount));
+        Random random = new Random(seed);
+        BitSet drawn = new BitSet(wordCount);
+        int [] picked = new int[n];
+
+        // Floyd: for each of the last n ordinals j, pick one of [0, j], or j itself if that
+        // one's taken. Every n-subset comes out equally likely.
+        for (int i = 0, j = wordCount - n; i < n; i += 1, j += 1)
+        {
+            int ordinal = random.nextInt(j + 1);
+
+            if (drawn.get(ordinal))
+            {
+                ordinal = j;
+            }
+
+            drawn.set(ordinal);
+            picked[i] = ordinal;
+        }
+
+        // Floyd's order isn't random (j itself tends to come late), so shuffle it.
+        for (int i = n - 1; i > 0; i -= 1)
+        {
+            int other = random.nextInt(i + 1);
+            int tmp = picked[i];
+
+            picked[i] = picked[other];
+            picked[other] = tmp;
+        }
+
+        // Each draw is packed as (ordinal, draw number), so sorting them sorts by ordinal
+        // and we still know where each word goes in the result.
+        long [] draws = new long[n];
+
+        for (int i = 0; i < n; i += 1)
+        {
+            draws[i] = ((long) picked[i] << 32) | i;
+        }
+
+        Arrays.sort(draws);
+
+        ArrayList<Parallel.Task<List<String>>> tasks = new ArrayList<>();
+        final int [] ordinals = new int[n];
+
+        for (int i = 0; i < n; i += 1)
+        {
+            ordinals[i] = (int) (draws[i] >>> 32);
+        }
+
+        for (int start = 0; start < n; )
+        {
+            long chunkEnd = entries.cumulative[entries.findChunk(ordinals[start]) + 1];
+            int end = start;
+
+            while (end < n && ordinals[end] < chunkEnd)
+            {
+                end += 1;
+            }
+
+            final int [] chunkOrdinals = Arrays.copyOfRange(ordinals, start, end);
+
+            tasks.add(() -> readSortedWords(chunkOrdinals, chunkOrdinals.length));
+            start = end;
+        }
+
+        List<List<String>> chunkWords;
+
+        if (parallel)
+        {
+            chunkWords = Parallel.invokeAll(tasks);
+        }
+        else
+        {
+            chunkWords = new ArrayList<>(tasks.size());
+
+            for (Parallel.Task<List<String>> task : tasks)
+            {
+                chunkWords.add(task.call());
+            }
+        }
+
+        String [] result = new String[n];
+        int idx = 0;
+
+        for (List<String> words : chunkWords)
+        {
+            for (String word : words)
+            {
+                result[(int) draws[idx]] = word;
+                idx += 1;
+            }
+        }
+
+        return new ArrayList<>(Arrays.asList(result));
+    }
+
+    public ArrayList<String> randomWords(int count, long seed) throws IOException, DataFormatException
+    {
+        return randomWords(count, seed, false);
+    }
+
     public String firstWord() throws IOException, DataFormatException
     {
         return readWord(0);
@@ -0,0 +1,285 @@
+package com.mandysoftware.wordutil;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+// Writes a sorted list of lines in the same format as the dictionaries' .idx files,
+// so that the sidecar indexes we build ourselves can be read back with IdxReader
+// and searched with the same key-range binary search.
+//
+// Format: raw-deflated chunks of newline-separated lines, followed by one 16-byte index
+// record per chunk (offset, line count, first key, last key), followed by the offset of
+// the index records. Keys are the first 4 bytes of the lower-cased UTF-8 line.
+public class IdxWriter
+{
+    // Smaller than the dictionaries' chunks, since sidecar lookups usually want
+    // just a handful of lines and shouldn't have to inflate more than that.
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    static class Line
+    {
+        final byte [] bytes;
+        final byte [] sortKey;
+
+        Line(String text)
+        {
+            bytes = text.getBytes(StandardCharsets.UTF_8);
+
+            String lower = text.toLowerCase(Locale.ROOT);
+
+            sortKey = lower.equals(text) ? bytes : lower.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    static int compareUnsigned(byte [] a, byte [] b)
+    {
+        int len = Math.min(a.length, b.length);
+
+        for (int i = 0; i < len; i += 1)
+        {
+            int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+
+            if (diff != 0)
+            {
+                return diff;
+            }
+        }
+
+        return a.length - b.length;
+    }
+
+    static int makeKey(byte [] sortKey)
+    {
+        int key = 0;
+
+        for (int i = 0; i < IndexEntry.SUGGEST_KEY_LENGTH; i += 1)
+        {
+            key <<= 8;
+
+            if (i < sortKey.length)
+            {
+                key |= sortKey[i] & 0xFF;
+            }
+        }
+
+        return key;
+    }
+
+    // Writes lines that are already in order, one at a time, so that a sidecar too big to
+    // hold in memory can be written out as it's produced. Each chunk is deflated as soon
+    // as it's full; only the index records are kept until the end.
+    //
+    // The file is written under a temporary name first and only renamed into place by
+    // close(), so a reader never sees a half-written sidecar. Call discard() instead
+    // to give up on it.
+    public static class SortedLines implements Closeable
+    {
+        final File file;
+        final File tmpFile;
+        final int chunkSize;
+        final DataOutputStream output;
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        final ArrayList<int []> records = new ArrayList<>();
+        final byte [] compressed = new byte[8192];
+
+        byte [] chunk;
+        int chunkLength = 0;
+        int chunkLines = 0;
+        int offset = 0;
+        byte [] firstKey = null;
+        byte [] lastKey = null;
+
+        public SortedLines(File file, int chunkSize) throws IOException
+        {
+            this.file = file;
+            this.chunkSize = chunkSize;
+            tmpFile = new File(file.getPath() + ".tmp");
+            chunk = new byte[Math.max(chunkSize, 1024)];
+            output = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmpFile)));
+        }
+
+        public SortedLines(File file) throws IOException
+        {
+            this(file, DEFAULT_CHUNK_SIZE);
+        }
+
+        // Adds the next line, which must not sort before the previous one (by lower-cased
+        // UTF-8 bytes) or contain newlines. Empty lines are dropped.
+        public void add(String text) throws IOException
+        {
+            if (!text.isEmpty())
+            {
+                add(new Line(text));
+            }
+        }
+
+        void add(Line line) throws IOException
+        {
+            if (lastKey != null && compareUnsigned(line.sortKey, lastKey) < 0)
+            {
+                throw new IllegalArgumentException("Lines must be added in sorted order.");
+            }
+
+            int lineLength = line.bytes.length + 1;
+
+            // At least one line per chunk, however long it is.
+            if (chunkLines > 0 && chunkLength + lineLength > chunkSize)
+            {
+                flushChunk();
+            }
+
+            if (chunkLength + lineLength > chunk.length)
+            {
+                chunk = Arrays.copyOf(chunk, chunkLength + lineLength);
+            }
+
+            System.arraycopy(line.bytes, 0, chunk, chunkLength, lineLength - 1);
+            chunk[chunkLength + lineLength - 1] = '\n';
+            chunkLength += lineLength;
+            chunkLines += 1;
+
+            if (firstKey == null)
+            {
+                firstKey = line.sortKey;
+            }
+
+            lastKey = line.sortKey;
+        }
+
+        void flushChunk() throws IOException
+        {
+            deflater.reset();
+            deflater.setInput(chunk, 0, chunkLength);
+            deflater.finish();
+
+            int chunkOffset = offset;
+
+            while (!deflater.finished())
+            {
+                int nBytes = deflater.deflate(compressed);
+
+                output.write(compressed, 0, nBytes);
+                offset += nBytes;
+            }
+
+            records.add(new int [] {
+                    chunkOffset, chunkLines, makeKey(firstKey), makeKey(lastKey)
+            });
+
+            chunkLength = 0;
+            chunkLines = 0;
+            firstKey = null;
+        }
+
+        // Finishes the file and moves it into place.
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                if (chunkLines > 0)
+                {
+                    flushChunk();
+                }
+
+                for (int [] record : records)
+                {
+                    for (int value : record)
+                    {
+                        output.writeInt(value);
+                    }
+                }
+
+                output.writeInt(offset);
+            }
+            finally
+            {
+                deflater.end();
+                output.close();
+            }
+
+            if (file.exists() && !file.delete())
+            {
+                throw new IOException("Could not replace " + file.getPath());
+            }
+
+            if (!tmpFile.renameTo(file))
+            {
+                throw new IOException("Could not rename " + tmpFile.getPath() + " to " +
+                        file.getPath());
+            }
+        }
+
+        // Gives up on the file, e.g. when the build that was writing it failed.
+        public void discard()
+        {
+            deflater.end();
+
+            try
+            {
+                output.close();
+            }
+            catch (IOException err)
+            {
+                // We're throwing the file away anyway.
+            }
+
+            //noinspection ResultOfMethodCallIgnored
+            tmpFile.delete();
+        }
+    }
+
+    // Sorts the lines (by lower-cased UTF-8 bytes, which is the order IdxReader expects)
+    // and writes them to the file. Lines must not contain newlines; empty lines are dropped.
+    public static void write(File file, Collection<String> lines, int chunkSize)
+            throws IOException
+    {
+        ArrayList<Line> sorted = new ArrayList<>(lines.size());
+
+        for (String text : lines)
+        {
+            if (!text.isEmpty())
+            {
+                sorted.add(new Line(text));
+            }
+        }
+
+        Line [] array = sorted.toArray(new Line[0]);
+
+        Arrays.sort(array, (a, b) -> compareUnsigned(a.sortKey, b.sortKey));
+
+        SortedLines output = new SortedLines(file, chunkSize);
+
+        try
+        {
+            for (Line line : array)
+            {
+                output.add(line);
+            }
+        }
+        catch (IOException|RuntimeException err)
+        {
+            output.discard();
+
+            throw err;
+        }
+
+        output.close();
+    }
+
+    public static void write(File file, Collection<String> lines) throws IOException
+    {
+        write(file, lines, DEFAULT_CHUNK_SIZE);
+    }
+}
@@ -1,5 +1,6 @@
 package com.mandysoftware.wordutil;
 
+import java.util.AbstractList;
 import java.util.List;
 
 public class IndexEntry
@@ -48,45 +49,132 @@ public class IndexEntry
         }
     }
 
-    public static class Suggest extends Base
+    // The suggestion index is kept as parallel primitive columns rather than as a list of
+    // objects, so that a big dictionary's index stays compact, and so that the cumulative
+    // word counts can be precomputed for O(log n) ordinal lookups.
+    public static class SuggestTable
     {
-        long key_a = 0;
-        long key_b = 0;
-        long count = 0;
-        long value = 0;
+        final long [] key_a;
+        final long [] key_b;
+        final long [] count;
+        final long [] value;
+
+        // cumulative[i] is the number of words in all the chunks before chunk i,
+        // and cumulative[size] is the total number of words.
+        final long [] cumulative;
+
+        final KeyColumn keysA;
+        final KeyColumn keysB;
+
+        int size = 0;
+
+        public SuggestTable(int capacity)
+        {
+            key_a = new long[capacity];
+            key_b = new long[capacity];
+            count = new long[capacity];
+            value = new long[capacity];
+            cumulative = new long[capacity + 1];
+
+            keysA = new KeyColumn(this, key_a);
+            keysB = new KeyColumn(this, key_b);
+        }
 
-        public static class PeekA implements Search.Peek
+        public void add(int key_a, int key_b, int value, int count)
         {
-            public static PeekA Instance = new PeekA();
+            this.key_a[size] = Integer.toUnsignedLong(key_a);
+            this.key_b[size] = Integer.toUnsignedLong(key_b);
+            this.value[size] = Integer.toUnsignedLong(value);
+            this.count[size] = Integer.toUnsignedLong(count);
 
-            @Override
-            public Comparable peek(List arr, int idx, final Object param)
-            {
-                long mask = MakeKeyMask(param, DEFAULT_SUGGEST_MASK);
+            cumulative[size + 1] = cumulative[size] + this.count[size];
 
-                return ((Suggest) arr.get(idx)).key_a & mask;
-            }
+            size += 1;
         }
 
-        public static class PeekB implements Search.Peek
+        public int size()
         {
-            public static PeekB Instance = new PeekB();
+            return size;
+        }
 
-            @Override
-            public Comparable peek(List arr, int idx, final Object param)
+        public long totalCount()
+        {
+            return cumulative[size];
+        }
+
+        // Returns the index of the chunk that contains the word with the given ordinal,
+        // or -1 if the ordinal is out of range.
+        public int findChunk(long wordIndex)
+        {
+            if (wordIndex < 0 || wordIndex >= cumulative[size])
             {
-                long mask = MakeKeyMask(param, DEFAULT_SUGGEST_MASK);
+                return -1;
+            }
+
+            int ia = 0;
+            int ib = size - 1;
 
-                return ((Suggest) arr.get(idx)).key_b & mask;
+            // Find the last chunk whose cumulative count is <= wordIndex.
+            // Empty chunks have the same cumulative count as the chunk after them,
+            // and taking the last one skips over them.
+            while (ia < ib)
+            {
+                int ic = (ia + ib + 1) >>> 1;
+
+                if (cumulative[ic] <= wordIndex)
+                {
+                    ia = ic;
+                }
+                else
+                {
+                    ib = ic - 1;
+                }
             }
+
+            return ia;
         }
+    }
+
+    // A read-only list view over one of the key columns, for use with Search.BinarySearch.
+    static class KeyColumn extends AbstractList<Long>
+    {
+        final SuggestTable table;
+        final long [] keys;
 
-        public Suggest(int key_a, int key_b, int value, int count)
+        KeyColumn(SuggestTable table, long [] keys)
         {
-            this.key_a = Integer.toUnsignedLong(key_a);
-            this.key_b = Integer.toUnsignedLong(key_b);
-            this.value = Integer.toUnsignedLong(value);
-            this.count = Integer.toUnsignedLong(count);
+            this.table = table;
+            this.keys = keys;
+        }
+
+        long getLong(int idx)
+        {
+            return keys[idx];
+        }
+
+        @Override
+        public Long get(int idx)
+        {
+            return keys[idx];
+        }
+
+        @Override
+        public int size()
+        {
+            return table.size;
+        }
+    }
+
+    public static class PeekKey implements Search.Peek
+    {
+        public static PeekKey Instance = new PeekKey();
+
+        @Override
+        public Comparable peek(List arr, int idx, final Object param)
+        {
+            long mask = MakeKeyMask(param, DEFAULT_SUGGEST_MASK);
+
+            return ((KeyColumn) arr).getLong(idx) & mask;
         }
     }
 }
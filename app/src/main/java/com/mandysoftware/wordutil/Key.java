@@ -7,22 +7,38 @@ import java.security.NoSuchAlgorithmException;
 import java.util.Locale;
 
 public class Key {
-    public static int MakeKey(String word)
-    {
-        try
+    // Looking up a MessageDigest allocates far more than hashing a word does, so each
+    // thread keeps its own. A null digest means MD5 isn't available.
+    static final ThreadLocal<MessageDigest> md5 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue()
         {
-            byte[] wordBytes = word.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte [] digest = md.digest(wordBytes);
+            try
+            {
+                return MessageDigest.getInstance("MD5");
+            }
+            catch (NoSuchAlgorithmException err)
+            {
+                return null;
+            }
+        }
+    };
 
-            int lo = (digest[1] & 0xFF);
-            int hi = (digest[0] & 0xFF);
+    public static int MakeKey(String word)
+    {
+        MessageDigest md = md5.get();
 
-            return hi * 256 + lo;
-        }
-        catch (NoSuchAlgorithmException err)
+        if (md == null)
         {
             return -1;
         }
+
+        byte[] wordBytes = word.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+        byte [] digest = md.digest(wordBytes);
+
+        int lo = (digest[1] & 0xFF);
+        int hi = (digest[0] & 0xFF);
+
+        return hi * 256 + lo;
     }
 }
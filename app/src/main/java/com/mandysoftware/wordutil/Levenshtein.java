@@ -0,0 +1,332 @@
+package com.mandysoftware.wordutil;
+
+import java.util.Arrays;
+
+// A Levenshtein automaton for a fixed query word and maximum edit distance.
+//
+// The automaton's state after reading some characters is the row of the classic edit
+// distance table for those characters: row[i] is the distance between what was read so far
+// and the first i characters of the query. Reading one more character computes the next row.
+// Once every value in the row is over the maximum distance, nothing that starts with what
+// was read can ever match, so the rest of the word (or chunk) can be skipped.
+//
+// Everything is compared case-insensitively by code point, like Utf8.Prefix.
+public class Levenshtein
+{
+    final int [] query;
+    final int maxDistance;
+
+    public Levenshtein(String query, int maxDistance)
+    {
+        this.query = Utf8.foldedCodePoints(query);
+        this.maxDistance = maxDistance;
+    }
+
+    public int getMaxDistance()
+    {
+        return maxDistance;
+    }
+
+    // Rows have one more value than the query has characters.
+    public int [] newRow()
+    {
+        return new int[query.length + 1];
+    }
+
+    // The state before anything is read.
+    public void start(int [] row)
+    {
+        for (int i = 0; i < row.length; i += 1)
+        {
+            row[i] = i;
+        }
+    }
+
+    // Reads one (already case-folded) character: computes `next` from `row`.
+    // Returns false if the automaton is dead, i.e. there's no way to get within
+    // the maximum distance anymore.
+    public boolean step(int [] row, int codePoint, int [] next)
+    {
+        int rowMin = next[0] = row[0] + 1;
+
+        for (int i = 1; i < row.length; i += 1)
+        {
+            int cost = query[i - 1] == codePoint ? 0 : 1;
+            int value = Math.min(Math.min(next[i - 1] + 1, row[i] + 1), row[i - 1] + cost);
+
+            next[i] = value;
+            rowMin = Math.min(rowMin, value);
+        }
+
+        return rowMin <= maxDistance;
+    }
+
+    // The distance between what was read so far and the whole query.
+    public int distance(int [] row)
+    {
+        return row[row.length - 1];
+    }
+
+    // Runs the automaton over the UTF-8 word in buf[start, end).
+    //
+    // In whole-word mode, returns the edit distance between the word and the query.
+    // In prefix mode, returns the smallest distance between the query and any prefix
+    // of the word, which is what you want for a query that's still being typed.
+    // Either way, returns -1 as soon as it's clear the word is too far away.
+    //
+    // The two row buffers are passed in so the caller can reuse them across words.
+    public int match(byte [] buf, int start, int end, boolean prefixMode,
+                     int [] rowA, int [] rowB)
+    {
+        // The length difference alone is a lower bound on the distance.
+        // Every character is at least one byte and at most four.
+        if (!prefixMode && (end - start) + maxDistance < query.length)
+        {
+            return -1;
+        }
+
+        if (!prefixMode && (end - start + 3) / 4 > query.length + maxDistance)
+        {
+            return -1;
+        }
+
+        int [] row = rowA;
+        int [] next = rowB;
+        int best = Integer.MAX_VALUE;
+
+        start(row);
+
+        if (prefixMode)
+        {
+            best = distance(row);
+        }
+
+        int idx = start;
+
+        while (idx < end)
+        {
+            int len = Utf8.sequenceLength(buf[idx]);
+
+            if (idx + len > end)
+            {
+                return -1;
+            }
+
+            int codePoint = Character.toLowerCase(Utf8.codePointAt(buf, idx));
+
+            if (!step(row, codePoint, next))
+            {
+                break;
+            }
+
+            int [] tmp = row;
+            row = next;
+            next = tmp;
+            idx += len;
+
+            if (prefixMode)
+            {
+                best = Math.min(best, distance(row));
+            }
+        }
+
+        if (!prefixMode)
+        {
+            // Stopped early: dead automaton.
+            if (idx < end)
+            {
+                return -1;
+            }
+
+            best = distance(row);
+        }
+
+        return best <= maxDistance ? best : -1;
+    }
+
+    // Could a word that starts with the given (already case-folded) code points be within
+    // the maximum distance? In prefix mode, it's enough for one of their prefixes to be,
+    // like match() does.
+    public boolean canMatchStartingWith(int [] codePoints, boolean prefixMode)
+    {
+        int [] row = newRow();
+        int [] next = newRow();
+
+        start(row);
+
+        for (int codePoint : codePoints)
+        {
+            // Every word that starts like this has a prefix that's close enough.
+            if (prefixMode && distance(row) <= maxDistance)
+            {
+                return true;
+            }
+
+            if (!step(row, codePoint, next))
+            {
+                return false;
+            }
+
+            int [] tmp = row;
+            row = next;
+            next = tmp;
+        }
+
+        return true;
+    }
+
+    // Gives the same results as match(), for words that come in sorted order, such as the
+    // words of a chunk. Sorted words share long prefixes with the ones before them, so
+    // rather than starting over for each word, this walks them like a trie: the states after
+    // each character of the previous word are kept, and a word picks up from the longest
+    // prefix it shares with it. When the automaton died on the previous word, every
+    // following word that shares the characters it died on gets the same result without
+    // being read at all, which is most of them.
+    //
+    // Not safe to share between threads; use one per chunk.
+    public static class SortedMatcher
+    {
+        final Levenshtein automaton;
+        final boolean prefixMode;
+
+        // For the previous word: rows[k] is the state after its first k characters,
+        // ends[k] is where the k-th character ends (relative to the start of the word), and
+        // best[k] is the smallest distance of the first k prefixes (for prefix mode).
+        int [][] rows = new int[16][];
+        int [] ends = new int[16];
+        int [] best = new int[16];
+
+        byte [] previous = null;
+        int previousStart = 0;
+        int previousEnd = 0;
+
+        // How many characters of the previous word were read, and whether reading stopped
+        // there because the automaton died on the next one, which ended at deadEnd.
+        int depth = 0;
+        boolean dead = false;
+        int deadEnd = 0;
+        int result = -1;
+
+        public SortedMatcher(Levenshtein automaton, boolean prefixMode)
+        {
+            this.automaton = automaton;
+            this.prefixMode = prefixMode;
+
+            rows[0] = automaton.newRow();
+            automaton.start(rows[0]);
+            best[0] = automaton.distance(rows[0]);
+        }
+
+        void grow()
+        {
+            rows = Arrays.copyOf(rows, rows.length * 2);
+            ends = Arrays.copyOf(ends, ends.length * 2);
+            best = Arrays.copyOf(best, best.length * 2);
+        }
+
+        // Same as Levenshtein.match() on the UTF-8 word in buf[start, end).
+        public int match(byte [] buf, int start, int end)
+        {
+            int maxDistance = automaton.maxDistance;
+            int queryLength = automaton.query.length;
+
+            // The same length bounds as match(). Words ruled out by them don't become
+            // the previous word, which is fine since the kept states are still right
+            // for the one that did.
+            if (!prefixMode && ((end - start) + maxDistance < queryLength ||
+                    (end - start + 3) / 4 > queryLength + maxDistance))
+            {
+                return -1;
+            }
+
+            int shared = 0;
+
+            if (previous != null)
+            {
+                int limit = Math.min(end - start, previousEnd - previousStart);
+
+                while (shared < limit && buf[start + shared] == previous[previousStart + shared])
+                {
+                    shared += 1;
+                }
+            }
+
+            if (dead && shared >= deadEnd)
+            {
+                previous = buf;
+                previousStart = start;
+                previousEnd = end;
+
+                return result;
+            }
+
+            int k = previous == null ? 0 : depth;
+
+            while (k > 0 && ends[k] > shared)
+            {
+                k -= 1;
+            }
+
+            int idx = start + (k == 0 ? 0 : ends[k]);
+
+            previous = buf;
+            previousStart = start;
+            previousEnd = end;
+            dead = false;
+
+            while (idx < end)
+            {
+                int len = Utf8.sequenceLength(buf[idx]);
+
+                if (idx + len > end)
+                {
+                    // Broken UTF-8: start over with the next word.
+                    previous = null;
+                    depth = 0;
+                    result = -1;
+
+                    return result;
+                }
+
+                if (k + 1 >= rows.length)
+                {
+                    grow();
+                }
+
+                if (rows[k + 1] == null)
+                {
+                    rows[k + 1] = automaton.newRow();
+                }
+
+                int codePoint = Character.toLowerCase(Utf8.codePointAt(buf, idx));
+
+                if (!automaton.step(rows[k], codePoint, rows[k + 1]))
+                {
+                    dead = true;
+                    deadEnd = idx + len - start;
+                    break;
+                }
+
+                idx += len;
+                k += 1;
+                ends[k] = idx - start;
+                best[k] = Math.min(best[k - 1], automaton.distance(rows[k]));
+            }
+
+            depth = k;
+
+            if (prefixMode)
+            {
+                result = best[k] <= maxDistance ? best[k] : -1;
+            }
+            else
+            {
+                int distance = automaton.distance(rows[k]);
+
+                result = !dead && distance <= maxDistance ? distance : -1;
+            }
+
+            return result;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.mandysoftware.wordutil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+// Reverse translations: which headwords link to a word. Definitions give translations as
+// links ("apple" has "# [[яблуко]]"), so the headwords that link to "яблуко" are the words
+// it translates.
+//
+// This sidecar holds one "target<TAB>headword" line per distinct link in every entry,
+// with the target folded like NormalizedIndex.fold(): "яблуко<TAB>apple". It sits next to
+// the .wap file (uk.wap -> uk.wap.links), sorted and chunked like any .idx file, so
+// a query is a single prefix search. Links to files, categories and other wikis, and
+// the links of redirect entries, are left out.
+public class LinkIndex
+{
+    static final String SIDECAR_KIND = "links";
+
+    // Longer link targets are captions and the like, not words.
+    static final int MAX_TARGET_LENGTH = 256;
+
+    final IdxReader sidecar;
+
+    LinkIndex(IdxReader sidecar)
+    {
+        this.sidecar = sidecar;
+    }
+
+    public static boolean isFresh(WapReader source)
+    {
+        return Sidecar.isFresh(Sidecar.fileFor(source.inputFile, SIDECAR_KIND), source.inputFile);
+    }
+
+    public static LinkIndex open(WapReader source) throws IOException, DataFormatException
+    {
+        File sidecarFile = Sidecar.fileFor(source.inputFile, SIDECAR_KIND);
+
+        if (!isFresh(source))
+        {
+            build(source, sidecarFile, new Sidecar.Build());
+        }
+
+        return new LinkIndex(new IdxReader(sidecarFile, source.isMemoryMapped()));
+    }
+
+    // Adds the targets of the [[...]] links in block[start, end) to the set, folded.
+    // Only the link targets themselves get decoded, not the text around them.
+    static void findTargets(byte [] block, int start, int end, LinkedHashSet<String> targets)
+    {
+        int idx = start;
+
+        while (idx + 1 < end)
+        {
+            if (block[idx] != '[' || block[idx + 1] != '[')
+            {
+                idx += 1;
+                continue;
+            }
+
+            int innerStart = idx + 2;
+            int innerEnd = innerStart;
+
+            // The target ends at the closing brackets, a label or an anchor.
+            while (innerEnd + 1 < end && !(block[innerEnd] == ']' && block[innerEnd + 1] == ']') &&
+                    block[innerEnd] != '|' && block[innerEnd] != '#' && block[innerEnd] != '\n' &&
+                    innerEnd - innerStart <= MAX_TARGET_LENGTH)
+            {
+                innerEnd += 1;
+            }
+
+            // Only a target that stops where a link target can stop; not at a newline,
+            // the end of the entry or the length limit.
+            boolean complete = innerEnd + 1 < end && block[innerEnd] != '\n' &&
+                    innerEnd - innerStart <= MAX_TARGET_LENGTH;
+
+            if (complete && innerEnd > innerStart)
+            {
+                String target = new String(block, innerStart, innerEnd - innerStart,
+                        StandardCharsets.UTF_8).trim();
+
+                if (!target.isEmpty() && !WikiEntry.isNamespaced(target))
+                {
+                    String folded = NormalizedIndex.fold(target).trim();
+
+                    if (!folded.isEmpty() && folded.indexOf(Sidecar.SEPARATOR) == -1)
+                    {
+                        targets.add(folded);
+                    }
+                }
+            }
+
+            idx = innerEnd;
+        }
+    }
+
+    static void build(WapReader source, File sidecarFile, final Sidecar.Build build)
+            throws IOException, DataFormatException
+    {
+        final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+
+        source.forEachEntry((word, block, start, end) -> {
+            if (word.indexOf(Sidecar.SEPARATOR) != -1 ||
+                    RedirectTable.redirectTarget(block, start, end) != null)
+            {
+                return true;
+            }
+
+            LinkedHashSet<String> targets = new LinkedHashSet<>();
+
+            findTargets(block, start, end, targets);
+
+            for (String target : targets)
+            {
+                lines.add(Sidecar.line(target, word));
+            }
+
+            return !build.isCancelled();
+        }, true);
+
+        build.check();
+
+        // IdxWriter sorts the lines anyway, so the order they came in doesn't matter.
+        IdxWriter.write(sidecarFile, lines);
+    }
+
+    public void close() throws IOException
+    {
+        sidecar.close();
+    }
+
+    // The headwords that link to the word (ignoring case, accents and apostrophe variants),
+    // in word list order.
+    public ArrayList<String> linkingTo(String target, int countLimit)
+            throws IOException, DataFormatException
+    {
+        return Sidecar.lookup(sidecar, NormalizedIndex.fold(target).trim(), countLimit);
+    }
+}
@@ -0,0 +1,141 @@
+package com.mandysoftware.wordutil;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+
+// Accent-, case- and apostrophe-insensitive lookups of headwords.
+//
+// The word list has entries like "коров'як" and "коров’як" side by side, and users can't be
+// expected to type the exact apostrophe (or accent) the dictionary happens to use.
+// This index maps the folded form of every headword (see fold()) to the headwords
+// themselves, so typing either one finds both of them.
+//
+// It's a sidecar next to the .idx file, built once for each version of the dictionary,
+// in the background by SidecarBuilder or else the first time open() is called.
+public class NormalizedIndex
+{
+    static final String SIDECAR_KIND = "norm";
+
+    // Apostrophe look-alikes, all folded to the plain ASCII apostrophe.
+    static final String APOSTROPHES = "\u2019\u2018\u02BC\u02B9\u0060\u00B4\uFF07\u2032";
+
+    final IdxReader sidecar;
+
+    NormalizedIndex(IdxReader sidecar)
+    {
+        this.sidecar = sidecar;
+    }
+
+    // Compatibility decomposition (NFKD), with the combining marks it splits off removed,
+    // apostrophe variants unified, and everything in lower case.
+    public static String fold(String text)
+    {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        StringBuilder builder = new StringBuilder(decomposed.length());
+
+        for (int i = 0; i < decomposed.length(); )
+        {
+            int codePoint = decomposed.codePointAt(i);
+            int type = Character.getType(codePoint);
+
+            i += Character.charCount(codePoint);
+
+            if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK ||
+                    type == Character.COMBINING_SPACING_MARK)
+            {
+                continue;
+            }
+
+            if (APOSTROPHES.indexOf(codePoint) != -1)
+            {
+                codePoint = '\'';
+            }
+            else if (Character.isISOControl(codePoint))
+            {
+                // Keeps the sidecar's line format intact.
+                codePoint = ' ';
+            }
+
+            builder.appendCodePoint(Character.toLowerCase(codePoint));
+        }
+
+        return builder.toString().toLowerCase(Locale.ROOT);
+    }
+
+    public static boolean isFresh(IdxReader source)
+    {
+        return Sidecar.isFresh(Sidecar.fileFor(source.inputFile, SIDECAR_KIND), source.inputFile);
+    }
+
+    // Opens the normalized index of the dictionary that `source` reads,
+    // building it first if it doesn't exist yet or is older than the .idx file.
+    public static NormalizedIndex open(IdxReader source) throws IOException, DataFormatException
+    {
+        File sidecarFile = Sidecar.fileFor(source.inputFile, SIDECAR_KIND);
+
+        if (!isFresh(source))
+        {
+            build(source, sidecarFile, new Sidecar.Build());
+        }
+
+        return new NormalizedIndex(new IdxReader(sidecarFile, source.isMemoryMapped()));
+    }
+
+    static void build(IdxReader source, File sidecarFile, final Sidecar.Build build)
+            throws IOException, DataFormatException
+    {
+        final ArrayList<String> lines = new ArrayList<>(source.countWords());
+
+        // IdxWriter sorts the lines anyway, so the order we see the words in doesn't matter.
+        source.forEachWord((ordinal, word) -> {
+            String folded = fold(word).trim();
+
+            if (!folded.isEmpty())
+            {
+                lines.add(Sidecar.line(folded, word));
+            }
+
+            return !build.isCancelled();
+        }, false);
+
+        build.check();
+        IdxWriter.write(sidecarFile, lines);
+    }
+
+    public void close() throws IOException
+    {
+        sidecar.close();
+    }
+
+    // Headwords whose folded form starts with the folded prefix, in folded order.
+    public ArrayList<String> suggest(String prefix, int suggestionCountLimit)
+            throws IOException, DataFormatException
+    {
+        ArrayList<String> lines = sidecar.suggest(fold(prefix), suggestionCountLimit);
+        LinkedHashSet<String> words = new LinkedHashSet<>(lines.size());
+
+        for (String line : lines)
+        {
+            words.add(line.substring(line.indexOf(Sidecar.SEPARATOR) + 1));
+        }
+
+        return new ArrayList<>(words);
+    }
+
+    // All the headwords that fold to the same thing as the given word.
+    public ArrayList<String> resolve(String word, int countLimit)
+            throws IOException, DataFormatException
+    {
+        return Sidecar.lookup(sidecar, fold(word).trim(), countLimit);
+    }
+
+    public ArrayList<String> resolve(String word) throws IOException, DataFormatException
+    {
+        return resolve(word, sidecar.DEFAULT_SUGGESTION_COUNT_LIMIT);
+    }
+}
@@ -0,0 +1,112 @@
+package com.mandysoftware.wordutil;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+
+// The fork-join pool shared by all the readers for scanning chunks in parallel.
+//
+// ForkJoinPool.commonPool() needs API level 24, so we keep our own. Its worker threads are
+// daemon threads, so it never keeps the app from exiting.
+public class Parallel
+{
+    static ForkJoinPool pool = null;
+
+    public static synchronized ForkJoinPool getPool()
+    {
+        if (pool == null)
+        {
+            pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+        }
+
+        return pool;
+    }
+
+    public static int getParallelism()
+    {
+        return getPool().getParallelism();
+    }
+
+    public interface Task<T>
+    {
+        T call() throws IOException, DataFormatException;
+    }
+
+    // Runs the tasks on the pool and returns their results in the same order as the tasks.
+    // The reader exceptions thrown by a task are passed on as they are.
+    public static <T> List<T> invokeAll(List<Task<T>> tasks) throws IOException, DataFormatException
+    {
+        ArrayList<Callable<T>> callables = new ArrayList<>(tasks.size());
+
+        for (final Task<T> task : tasks)
+        {
+            callables.add(task::call);
+        }
+
+        ArrayList<T> results = new ArrayList<>(tasks.size());
+
+        for (Future<T> future : getPool().invokeAll(callables))
+        {
+            results.add(get(future));
+        }
+
+        return results;
+    }
+
+    // Submits a single task to the pool. Use get() to wait for its result.
+    public static <T> Future<T> submit(final Task<T> task)
+    {
+        Callable<T> callable = task::call;
+
+        return getPool().submit(callable);
+    }
+
+    // Waits for a task's result, passing on its reader exceptions as they are.
+    public static <T> T get(Future<T> future) throws IOException, DataFormatException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException err)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while waiting for chunk tasks.");
+        }
+        catch (ExecutionException err)
+        {
+            throw unwrap(err);
+        }
+    }
+
+    static IOException unwrap(ExecutionException err) throws DataFormatException
+    {
+        Throwable cause = err.getCause();
+
+        if (cause instanceof IOException)
+        {
+            return (IOException) cause;
+        }
+        else if (cause instanceof DataFormatException)
+        {
+            throw (DataFormatException) cause;
+        }
+        else if (cause instanceof RuntimeException)
+        {
+            throw (RuntimeException) cause;
+        }
+        else if (cause instanceof Error)
+        {
+            throw (Error) cause;
+        }
+
+        return new IOException(cause);
+    }
+}
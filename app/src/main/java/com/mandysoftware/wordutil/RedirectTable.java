@@ -0,0 +1,206 @@
+package com.mandysoftware.wordutil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+
+// Redirect entries, like "#ПЕРЕНАПРАВЛЕННЯ [[в своєму репертуарі]]" or "#REDIRECT [[word]]",
+// and where they finally lead.
+//
+// Without this, following a redirect means inflating the redirect's own block just to find
+// out where it points, and then the target's block. This index maps every redirecting
+// headword straight to the end of its chain, so a redirected lookup only inflates the
+// target's block. Chains that loop back on themselves are left out.
+//
+// It's a sidecar next to the .wap file (uk.wap -> uk.wap.redir), built from a pass over
+// every entry once for each version of the dictionary, in the background by SidecarBuilder
+// or else the first time open() is called.
+public class RedirectTable
+{
+    static final String SIDECAR_KIND = "redir";
+
+    // The redirect keywords, matched case-insensitively at the start of an entry.
+    static final String [] MARKERS = new String [] {"#ПЕРЕНАПРАВЛЕННЯ", "#REDIRECT"};
+
+    // Real chains are one or two hops long; anything much longer is broken data.
+    static final int MAX_HOPS = 8;
+
+    // Redirects are a single short line, so there's no point decoding more than this
+    // to find out whether an entry is one.
+    static final int MAX_REDIRECT_LENGTH = 1024;
+
+    // A headword can have a few case variants, which the sidecar's prefix search finds too.
+    static final int CASE_VARIANT_LIMIT = 8;
+
+    final IdxReader sidecar;
+
+    RedirectTable(IdxReader sidecar)
+    {
+        this.sidecar = sidecar;
+    }
+
+    // The word a redirect entry points to, or null if the entry isn't a redirect.
+    // Anchors ("word#Section") and link labels ("word|label") are dropped.
+    public static String redirectTarget(String definition)
+    {
+        String text = definition.trim();
+
+        for (String marker : MARKERS)
+        {
+            if (!text.regionMatches(true, 0, marker, 0, marker.length()))
+            {
+                continue;
+            }
+
+            String rest = text.substring(marker.length()).trim();
+
+            if (rest.startsWith(":"))
+            {
+                rest = rest.substring(1).trim();
+            }
+
+            int close = rest.indexOf("]]");
+
+            if (!rest.startsWith("[[") || close == -1)
+            {
+                return null;
+            }
+
+            String target = rest.substring(2, close);
+            int cut = target.indexOf('|');
+
+            if (cut != -1)
+            {
+                target = target.substring(0, cut);
+            }
+
+            cut = target.indexOf('#');
+
+            if (cut != -1)
+            {
+                target = target.substring(0, cut);
+            }
+
+            target = target.trim();
+
+            return target.isEmpty() ? null : target;
+        }
+
+        return null;
+    }
+
+    // Same as above, for the entry in block[start, end). Most entries are told apart by
+    // their first byte, without decoding anything.
+    public static String redirectTarget(byte [] block, int start, int end)
+    {
+        if (start >= end || block[start] != '#')
+        {
+            return null;
+        }
+
+        int length = Math.min(end - start, MAX_REDIRECT_LENGTH);
+
+        return redirectTarget(new String(block, start, length, StandardCharsets.UTF_8));
+    }
+
+    // Opens the redirect table of the dictionary that `source` reads,
+    // building it first if it doesn't exist yet or is older than the .wap file.
+    public static RedirectTable open(WapReader source) throws IOException, DataFormatException
+    {
+        File sidecarFile = Sidecar.fileFor(source.inputFile, SIDECAR_KIND);
+
+        if (!isFresh(source))
+        {
+            build(source, sidecarFile, new Sidecar.Build());
+        }
+
+        return new RedirectTable(new IdxReader(sidecarFile, source.isMemoryMapped()));
+    }
+
+    public static boolean isFresh(WapReader source)
+    {
+        return Sidecar.isFresh(Sidecar.fileFor(source.inputFile, SIDECAR_KIND), source.inputFile);
+    }
+
+    static void build(WapReader source, File sidecarFile, final Sidecar.Build build)
+            throws IOException, DataFormatException
+    {
+        final Map<String, String> redirects = Collections.synchronizedMap(new HashMap<>());
+
+        source.forEachEntry((word, block, start, end) -> {
+            String target = redirectTarget(block, start, end);
+
+            if (target != null)
+            {
+                redirects.put(word, target);
+            }
+
+            return !build.isCancelled();
+        }, true);
+
+        build.check();
+
+        ArrayList<String> lines = new ArrayList<>(redirects.size());
+
+        for (String word : redirects.keySet())
+        {
+            String target = finalTarget(redirects, word);
+
+            if (target != null && word.indexOf(Sidecar.SEPARATOR) == -1)
+            {
+                lines.add(Sidecar.line(word, target));
+            }
+        }
+
+        IdxWriter.write(sidecarFile, lines);
+    }
+
+    // Follows the chain of redirects from the word to the first word that isn't a redirect.
+    // Null if the chain loops or is too long.
+    static String finalTarget(Map<String, String> redirects, String word)
+    {
+        HashSet<String> seen = new HashSet<>();
+        String current = word;
+
+        while (redirects.containsKey(current))
+        {
+            if (!seen.add(current) || seen.size() > MAX_HOPS)
+            {
+                return null;
+            }
+
+            current = redirects.get(current);
+        }
+
+        return current;
+    }
+
+    public void close() throws IOException
+    {
+        sidecar.close();
+    }
+
+    // The word at the end of the word's redirect chain, or null if the word
+    // isn't a redirect (or its chain loops).
+    public String resolve(String word) throws IOException, DataFormatException
+    {
+        String prefix = Sidecar.line(word, "");
+
+        // The sidecar's prefix search ignores case, but redirects are by exact headword.
+        for (String line : sidecar.suggest(prefix, CASE_VARIANT_LIMIT))
+        {
+            if (line.startsWith(prefix))
+            {
+                return line.substring(prefix.length());
+            }
+        }
+
+        return null;
+    }
+}
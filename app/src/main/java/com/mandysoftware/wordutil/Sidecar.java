@@ -0,0 +1,109 @@
+package com.mandysoftware.wordutil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.zip.DataFormatException;
+
+// Helpers for the sidecar indexes that we build from a dictionary's files and keep
+// next to them (uk.idx -> uk.idx.norm, and so on).
+//
+// Most sidecars are written with IdxWriter as "key<TAB>value" lines, so a lookup is just a
+// prefix search for "key<TAB>" with IdxReader. A sidecar is rebuilt whenever its source
+// file is newer than it, i.e. once per dictionary version.
+public class Sidecar
+{
+    public static final char SEPARATOR = '\t';
+
+    // A build in progress, which another thread can cancel (see SidecarBuilder).
+    // The builds check it as they go and give up with an InterruptedIOException,
+    // leaving no sidecar behind.
+    public static class Build
+    {
+        volatile boolean cancelled = false;
+
+        public void cancel()
+        {
+            cancelled = true;
+        }
+
+        public boolean isCancelled()
+        {
+            return cancelled;
+        }
+
+        public void check() throws InterruptedIOException
+        {
+            if (cancelled)
+            {
+                throw new InterruptedIOException("The sidecar build was cancelled.");
+            }
+        }
+    }
+
+    // All the sidecar kinds, so they can be cleaned up along with the dictionary.
+    static final String [] KINDS = new String [] {
+            NormalizedIndex.SIDECAR_KIND,
+            TrigramIndex.SIDECAR_KIND,
+            SuffixIndex.SIDECAR_KIND,
+            RedirectTable.SIDECAR_KIND,
+            FullTextIndex.SIDECAR_KIND,
+            FullTextIndex.POSTINGS_KIND,
+            LinkIndex.SIDECAR_KIND
+    };
+
+    public static File fileFor(File source, String kind)
+    {
+        return new File(source.getPath() + "." + kind);
+    }
+
+    public static boolean isFresh(File sidecar, File source)
+    {
+        return sidecar.exists() && sidecar.length() > 0 &&
+                sidecar.lastModified() >= source.lastModified();
+    }
+
+    // Deletes every sidecar of the given source files. Returns false if any of them
+    // exists but couldn't be deleted.
+    public static boolean deleteAll(File ... sources)
+    {
+        boolean success = true;
+
+        for (File source : sources)
+        {
+            for (String kind : KINDS)
+            {
+                File sidecar = fileFor(source, kind);
+
+                if (sidecar.exists() && !sidecar.delete())
+                {
+                    success = false;
+                }
+            }
+        }
+
+        return success;
+    }
+
+    public static String line(String key, String value)
+    {
+        return key + SEPARATOR + value;
+    }
+
+    // Returns the values of all the "key<TAB>value" lines with exactly the given key.
+    // The key must already be in the form the sidecar was written with.
+    public static ArrayList<String> lookup(IdxReader sidecar, String key, int countLimit)
+            throws IOException, DataFormatException
+    {
+        String prefix = key + SEPARATOR;
+        ArrayList<String> result = sidecar.suggest(prefix, countLimit);
+
+        for (int i = 0; i < result.size(); i += 1)
+        {
+            result.set(i, result.get(i).substring(prefix.length()));
+        }
+
+        return result;
+    }
+}
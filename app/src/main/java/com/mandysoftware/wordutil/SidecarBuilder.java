@@ -0,0 +1,277 @@
+package com.mandysoftware.wordutil;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+
+// Builds the sidecar indexes of the installed dictionaries in the background.
+//
+// The first build of a sidecar takes a pass over the whole word list or over every
+// definition, which is far too slow for loading or for the command thread. So the builds
+// run here, on a thread of their own, one dictionary at a time and with their own readers,
+// and the command thread only opens sidecars that are already there (see
+// IdxReader.openNormalizedIndexIfBuilt() and the like). Until then, the commands that use
+// them do without them.
+//
+// A dictionary's builds have to be cancelled (see cancel()) before its files are deleted
+// or replaced.
+public class SidecarBuilder
+{
+    final static String TAG = "SidecarBuilder";
+
+    // The builds of one dictionary, given by its path prefix (".../uk").
+    class Task implements Runnable
+    {
+        final String pathPrefix;
+        final Sidecar.Build build = new Sidecar.Build();
+
+        boolean started = false;
+        boolean finished = false;
+
+        Task(String pathPrefix)
+        {
+            this.pathPrefix = pathPrefix;
+        }
+
+        @Override
+        public void run()
+        {
+            synchronized (this)
+            {
+                if (build.isCancelled())
+                {
+                    finished = true;
+
+                    return;
+                }
+
+                started = true;
+            }
+
+            try
+            {
+                buildAll(pathPrefix, build);
+            }
+            catch (InterruptedIOException err)
+            {
+                Log.i(TAG, "Cancelled the sidecar builds of " + pathPrefix);
+            }
+            catch (IOException|DataFormatException err)
+            {
+                Log.w(TAG, "Could not open " + pathPrefix + " to build its sidecars: " +
+                        err.getMessage());
+            }
+            finally
+            {
+                synchronized (SidecarBuilder.this)
+                {
+                    if (tasks.get(pathPrefix) == this)
+                    {
+                        tasks.remove(pathPrefix);
+                    }
+                }
+
+                synchronized (this)
+                {
+                    finished = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        // Cancels the builds and waits for the one in progress, if any, to give up.
+        void cancel()
+        {
+            build.cancel();
+
+            synchronized (this)
+            {
+                if (!started)
+                {
+                    // It's still queued, and will return as soon as it runs.
+                    return;
+                }
+
+                while (!finished)
+                {
+                    try
+                    {
+                        wait();
+                    }
+                    catch (InterruptedException err)
+                    {
+                        Thread.currentThread().interrupt();
+
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, TAG);
+
+        // Lookups come first.
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    // The queued or running builds, by path prefix.
+    final HashMap<String, Task> tasks = new HashMap<>();
+
+    // Queues the builds of any of the dictionary's sidecars that are missing or out of date.
+    // Does nothing if they're already queued.
+    public synchronized void schedule(String pathPrefix)
+    {
+        if (tasks.containsKey(pathPrefix))
+        {
+            return;
+        }
+
+        Task task = new Task(pathPrefix);
+
+        tasks.put(pathPrefix, task);
+        executor.execute(task);
+    }
+
+    // Cancels the dictionary's builds, and waits until none of them is reading its files
+    // or writing its sidecars any more.
+    public void cancel(String pathPrefix)
+    {
+        Task task;
+
+        synchronized (this)
+        {
+            task = tasks.remove(pathPrefix);
+        }
+
+        if (task != null)
+        {
+            task.cancel();
+        }
+    }
+
+    // Cancels all the builds and stops the thread. Doesn't wait.
+    public void shutdown()
+    {
+        ArrayList<Task> cancelled;
+
+        synchronized (this)
+        {
+            cancelled = new ArrayList<>(tasks.values());
+            tasks.clear();
+        }
+
+        for (Task task : cancelled)
+        {
+            task.build.cancel();
+        }
+
+        executor.shutdown();
+    }
+
+    // One sidecar's build.
+    interface Step
+    {
+        void build() throws IOException, DataFormatException;
+    }
+
+    // Runs the build unless the task has been cancelled. A build that fails is logged and
+    // skipped, since the dictionary works without the sidecar; a cancelled one ends the task.
+    static void runStep(String description, String pathPrefix, Sidecar.Build build, Step step)
+            throws InterruptedIOException
+    {
+        build.check();
+
+        try
+        {
+            Log.i(TAG, "Building the " + description + " of " + pathPrefix + " ...");
+
+            step.build();
+        }
+        catch (InterruptedIOException err)
+        {
+            throw err;
+        }
+        catch (IOException|DataFormatException err)
+        {
+            Log.w(TAG, "Could not build the " + description + " of " + pathPrefix + ": " +
+                    err.getMessage());
+        }
+    }
+
+    // Builds each of the dictionary's sidecars that isn't fresh.
+    static void buildAll(String pathPrefix, final Sidecar.Build build)
+            throws IOException, DataFormatException
+    {
+        final File idxFile = new File(pathPrefix + ".idx");
+        final File wapFile = new File(pathPrefix + ".wap");
+        final IdxReader words = new IdxReader(idxFile);
+        final WapReader definitions;
+
+        try
+        {
+            definitions = new WapReader(wapFile);
+        }
+        catch (IOException|RuntimeException err)
+        {
+            words.close();
+
+            throw err;
+        }
+
+        try
+        {
+            if (!NormalizedIndex.isFresh(words))
+            {
+                runStep("normalized index", pathPrefix, build, () -> NormalizedIndex.build(words,
+                        Sidecar.fileFor(idxFile, NormalizedIndex.SIDECAR_KIND), build));
+            }
+
+            if (!TrigramIndex.isFresh(words))
+            {
+                runStep("trigram index", pathPrefix, build, () -> TrigramIndex.build(words,
+                        Sidecar.fileFor(idxFile, TrigramIndex.SIDECAR_KIND), build));
+            }
+
+            if (!SuffixIndex.isFresh(words))
+            {
+                runStep("suffix index", pathPrefix, build, () -> SuffixIndex.build(words,
+                        Sidecar.fileFor(idxFile, SuffixIndex.SIDECAR_KIND), build));
+            }
+
+            if (!RedirectTable.isFresh(definitions))
+            {
+                runStep("redirect table", pathPrefix, build, () -> RedirectTable.build(
+                        definitions, Sidecar.fileFor(wapFile, RedirectTable.SIDECAR_KIND), build));
+            }
+
+            if (!FullTextIndex.isFresh(words, definitions))
+            {
+                runStep("full-text index", pathPrefix, build, () -> FullTextIndex.build(words,
+                        definitions, Sidecar.fileFor(wapFile, FullTextIndex.SIDECAR_KIND), build));
+            }
+
+            if (!LinkIndex.isFresh(definitions))
+            {
+                runStep("link index", pathPrefix, build, () -> LinkIndex.build(definitions,
+                        Sidecar.fileFor(wapFile, LinkIndex.SIDECAR_KIND), build));
+            }
+        }
+        finally
+        {
+            definitions.close();
+            words.close();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.mandysoftware.wordutil;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A least-recently-used cache bounded by the total size of the values it holds rather than
+// by their number, for values whose sizes vary a lot (inflated blocks, parsed definitions).
+// Subclasses say what a value's size is. When the budget is exceeded, the least recently
+// used values are evicted first. Safe to share between threads.
+public abstract class SizedLruCache<K, V>
+{
+    // A budget of zero (or less) disables the cache altogether.
+    final LinkedHashMap<K, V> values = new LinkedHashMap<>(16, 0.75f, true);
+
+    long capacityBytes;
+    long sizeBytes = 0;
+
+    long hits = 0;
+    long misses = 0;
+    long evictions = 0;
+
+    protected SizedLruCache(long capacityBytes)
+    {
+        this.capacityBytes = capacityBytes;
+    }
+
+    // The size of the value in bytes, or a rough estimate of it.
+    protected abstract long sizeOf(V value);
+
+    public synchronized V get(K key)
+    {
+        V value = values.get(key);
+
+        if (value != null)
+        {
+            hits += 1;
+        }
+        else
+        {
+            misses += 1;
+        }
+
+        return value;
+    }
+
+    public synchronized void put(K key, V value)
+    {
+        // A single value that is larger than the whole budget would just evict everything
+        // else and then get evicted itself, so don't bother caching it.
+        if (sizeOf(value) > capacityBytes)
+        {
+            return;
+        }
+
+        V previous = values.put(key, value);
+
+        if (previous != null)
+        {
+            sizeBytes -= sizeOf(previous);
+        }
+
+        sizeBytes += sizeOf(value);
+
+        trim();
+    }
+
+    public synchronized void remove(K key)
+    {
+        V previous = values.remove(key);
+
+        if (previous != null)
+        {
+            sizeBytes -= sizeOf(previous);
+        }
+    }
+
+    public synchronized void setCapacity(long capacityBytes)
+    {
+        this.capacityBytes = capacityBytes;
+
+        trim();
+    }
+
+    public synchronized void clear()
+    {
+        values.clear();
+        sizeBytes = 0;
+    }
+
+    protected void trim()
+    {
+        Iterator<Map.Entry<K, V>> iter = values.entrySet().iterator();
+
+        // The iteration order is least recently used first.
+        while (sizeBytes > capacityBytes && iter.hasNext())
+        {
+            Map.Entry<K, V> eldest = iter.next();
+
+            sizeBytes -= sizeOf(eldest.getValue());
+            evictions += 1;
+            iter.remove();
+        }
+    }
+
+    public synchronized long getCapacity()
+    {
+        return capacityBytes;
+    }
+
+    public synchronized long getSize()
+    {
+        return sizeBytes;
+    }
+
+    public synchronized int getEntryCount()
+    {
+        return values.size();
+    }
+
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    public synchronized void resetStats()
+    {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+}
@@ -0,0 +1,99 @@
+package com.mandysoftware.wordutil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.zip.DataFormatException;
+
+// Lookups of headwords by how they end ("-ування", "-ness"), e.g. for rhymes.
+//
+// A suffix of a word is a prefix of the word spelled backwards, so this sidecar holds every
+// headword reversed (code point by code point), followed by the headword itself:
+// "аворок<TAB>корова". It's sorted and chunked like any .idx file, which means a suffix
+// query is the same key-range binary search and chunk scan as a regular prefix query.
+public class SuffixIndex
+{
+    static final String SIDECAR_KIND = "rev";
+
+    final IdxReader sidecar;
+
+    SuffixIndex(IdxReader sidecar)
+    {
+        this.sidecar = sidecar;
+    }
+
+    // Reverses the text by code point, so surrogate pairs stay the right way around.
+    public static String reverse(String text)
+    {
+        StringBuilder builder = new StringBuilder(text.length());
+
+        for (int i = text.length(); i > 0; )
+        {
+            int codePoint = text.codePointBefore(i);
+
+            builder.appendCodePoint(codePoint);
+            i -= Character.charCount(codePoint);
+        }
+
+        return builder.toString();
+    }
+
+    public static boolean isFresh(IdxReader source)
+    {
+        return Sidecar.isFresh(Sidecar.fileFor(source.inputFile, SIDECAR_KIND), source.inputFile);
+    }
+
+    public static SuffixIndex open(IdxReader source) throws IOException, DataFormatException
+    {
+        File sidecarFile = Sidecar.fileFor(source.inputFile, SIDECAR_KIND);
+
+        if (!isFresh(source))
+        {
+            build(source, sidecarFile, new Sidecar.Build());
+        }
+
+        return new SuffixIndex(new IdxReader(sidecarFile, source.isMemoryMapped()));
+    }
+
+    static void build(IdxReader source, File sidecarFile, final Sidecar.Build build)
+            throws IOException, DataFormatException
+    {
+        final ArrayList<String> lines = new ArrayList<>(source.countWords());
+
+        source.forEachWord((ordinal, word) -> {
+            // The separator and newlines would break the line format.
+            if (word.indexOf(Sidecar.SEPARATOR) == -1 && word.indexOf('\n') == -1)
+            {
+                lines.add(Sidecar.line(reverse(word), word));
+            }
+
+            return !build.isCancelled();
+        }, false);
+
+        build.check();
+
+        IdxWriter.write(sidecarFile, lines);
+    }
+
+    public void close() throws IOException
+    {
+        sidecar.close();
+    }
+
+    // Headwords that end with the suffix (case-insensitively), ordered by their reversed
+    // spelling, so words that share the longest endings come together.
+    public ArrayList<String> suggest(String suffix, int suggestionCountLimit)
+            throws IOException, DataFormatException
+    {
+        ArrayList<String> lines = sidecar.suggest(reverse(suffix), suggestionCountLimit);
+
+        for (int i = 0; i < lines.size(); i += 1)
+        {
+            String line = lines.get(i);
+
+            lines.set(i, line.substring(line.indexOf(Sidecar.SEPARATOR) + 1));
+        }
+
+        return lines;
+    }
+}
@@ -0,0 +1,80 @@
+package com.mandysoftware.wordutil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.zip.DataFormatException;
+
+// Pages through all the words that start with a prefix, for "infinite scroll" lists.
+//
+// The cursor keeps the (chunk, byte offset) position right after the last word it returned,
+// so each page picks up from there, crossing chunk boundaries as needed, rather than
+// decoding everything before it again with a bigger limit.
+public class SuggestCursor
+{
+    final IdxReader reader;
+    final Utf8.Prefix matcher;
+    final int lastChunk;
+    final IdxReader.Position position;
+
+    int returnedCount = 0;
+
+    SuggestCursor(IdxReader reader, Utf8.Prefix matcher, IdxReader.Position from, int lastChunk)
+    {
+        this.reader = reader;
+        this.matcher = matcher;
+        this.position = new IdxReader.Position(from);
+        this.lastChunk = lastChunk;
+    }
+
+    SuggestCursor(IdxReader reader, String prefix)
+    {
+        this.reader = reader;
+        this.matcher = new Utf8.Prefix(prefix);
+
+        IdxReader.Bounds bounds = reader.findIndexBounds(prefix);
+
+        if (bounds.bound_a == -1)
+        {
+            // Nothing to scan.
+            this.position = new IdxReader.Position(0, 0);
+            this.lastChunk = -1;
+        }
+        else
+        {
+            this.position = new IdxReader.Position(bounds.bound_a, 0);
+            this.lastChunk = bounds.bound_b;
+        }
+    }
+
+    public String getPrefix()
+    {
+        return matcher.text;
+    }
+
+    // How many words all the pages so far have returned.
+    public int getReturnedCount()
+    {
+        return returnedCount;
+    }
+
+    // False once the end of the chunk range is reached. A true value only means that there
+    // are words left to look at; the next page can still turn out empty.
+    public boolean hasMore()
+    {
+        return position.chunk <= lastChunk && position.chunk < reader.entries.size();
+    }
+
+    public ArrayList<String> nextPage(int pageSize) throws IOException, DataFormatException
+    {
+        ArrayList<String> result = new ArrayList<>(Math.max(pageSize, 0));
+
+        if (pageSize > 0 && hasMore())
+        {
+            reader.scanChunks(matcher, position, lastChunk, pageSize, result, null);
+        }
+
+        returnedCount += result.size();
+
+        return result;
+    }
+}
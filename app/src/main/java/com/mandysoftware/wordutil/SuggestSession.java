@@ -0,0 +1,180 @@
+package com.mandysoftware.wordutil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.zip.DataFormatException;
+
+// Suggestions for a user who is typing a word out one character at a time.
+//
+// Every word that starts with "коро" also starts with "кор", so once we know where the
+// first "кор" word is, there's no need to look at anything before it for "коро".
+// The session remembers the position of the first match for each
+// prefix typed so far, and each new character starts scanning from there instead of
+// from the top of the chunk range. Deleting characters just pops back to the state that
+// was saved for the shorter prefix.
+//
+// A session is not thread-safe; use one per input field.
+public class SuggestSession
+{
+    static class State
+    {
+        final Utf8.Prefix matcher;
+        // Where the first matching word is, or null if nothing matched at all.
+        final IdxReader.Position firstMatch;
+
+        State(Utf8.Prefix matcher, IdxReader.Position firstMatch)
+        {
+            this.matcher = matcher;
+            this.firstMatch = firstMatch;
+        }
+
+        // Is this state's prefix a (case-folded) prefix of the given one?
+        boolean isPrefixOf(Utf8.Prefix other)
+        {
+            if (matcher.codePoints.length > other.codePoints.length)
+            {
+                return false;
+            }
+
+            for (int i = 0; i < matcher.codePoints.length; i += 1)
+            {
+                if (matcher.codePoints[i] != other.codePoints[i])
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    final IdxReader reader;
+
+    // One state per prefix typed so far, shortest first.
+    final ArrayList<State> states = new ArrayList<>();
+
+    // Continues after the last page of suggestions for the current prefix.
+    SuggestCursor cursor = null;
+
+    SuggestSession(IdxReader reader)
+    {
+        this.reader = reader;
+    }
+
+    public void reset()
+    {
+        states.clear();
+        cursor = null;
+    }
+
+    public String getPrefix()
+    {
+        if (cursor == null)
+        {
+            return null;
+        }
+
+        return cursor.getPrefix();
+    }
+
+    public ArrayList<String> suggest(String prefix, int suggestionCountLimit)
+            throws IOException, DataFormatException
+    {
+        Utf8.Prefix matcher = new Utf8.Prefix(prefix);
+
+        if (suggestionCountLimit <= 0)
+        {
+            cursor = new SuggestCursor(reader, prefix);
+
+            return new ArrayList<>();
+        }
+
+        // Backspace (or any edit that isn't just appending): drop the states that no longer apply.
+        while (!states.isEmpty() && !states.get(states.size() - 1).isPrefixOf(matcher))
+        {
+            states.remove(states.size() - 1);
+        }
+
+        // The empty prefix gives nothing to narrow down from, so it doesn't get a state.
+        if (matcher.length() == 0)
+        {
+            cursor = new SuggestCursor(reader, prefix);
+
+            return cursor.nextPage(suggestionCountLimit);
+        }
+
+        State previous = states.isEmpty() ? null : states.get(states.size() - 1);
+        ArrayList<String> result = new ArrayList<>(suggestionCountLimit);
+
+        // Nothing matched a shorter prefix, so nothing can match this one either.
+        if (previous != null && previous.firstMatch == null)
+        {
+            pushState(previous, new State(matcher, null));
+            cursor = new SuggestCursor(reader, matcher, new IdxReader.Position(0, 0), -1);
+
+            return result;
+        }
+
+        // The chunk bounds are a cheap binary search, so we just redo them.
+        IdxReader.Bounds bounds = reader.findIndexBounds(prefix);
+        IdxReader.Position from = new IdxReader.Position(bounds.bound_a, 0);
+
+        if (bounds.bound_a == -1)
+        {
+            pushState(previous, new State(matcher, null));
+            cursor = new SuggestCursor(reader, matcher, from, -1);
+
+            return result;
+        }
+
+        // The expensive part is scanning the chunk, and that we can skip:
+        // whatever matches the new prefix comes no earlier than the first match of the old one.
+        if (previous != null && previous.firstMatch.compareTo(from) > 0)
+        {
+            from = new IdxReader.Position(previous.firstMatch);
+        }
+
+        IdxReader.Position firstMatch = new IdxReader.Position(-1, 0);
+
+        reader.scanChunks(matcher, from, bounds.bound_b, suggestionCountLimit, result, firstMatch);
+
+        pushState(previous, new State(matcher, firstMatch.chunk == -1 ? null : firstMatch));
+
+        // The scan left `from` right after the last word it looked at.
+        cursor = new SuggestCursor(reader, matcher, from, bounds.bound_b);
+        cursor.returnedCount = result.size();
+
+        return result;
+    }
+
+    // The next page of suggestions for the prefix last passed to suggest().
+    public ArrayList<String> suggestMore(int suggestionCountLimit)
+            throws IOException, DataFormatException
+    {
+        if (cursor == null)
+        {
+            return new ArrayList<>();
+        }
+
+        return cursor.nextPage(suggestionCountLimit);
+    }
+
+    public ArrayList<String> suggest(String prefix) throws IOException, DataFormatException
+    {
+        return suggest(prefix, reader.DEFAULT_SUGGESTION_COUNT_LIMIT);
+    }
+
+    // Retyping the same prefix replaces its state rather than stacking another copy.
+    void pushState(State previous, State state)
+    {
+        if (previous != null &&
+                previous.matcher.codePoints.length == state.matcher.codePoints.length)
+        {
+            states.set(states.size() - 1, state);
+        }
+        else
+        {
+            states.add(state);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.mandysoftware.wordutil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+
+// Substring ("contains") search over the headwords.
+//
+// The .idx key ranges only help with prefixes, so for substrings we keep a sidecar that
+// maps every trigram (three consecutive characters of a folded headword) to the ordinals
+// of the headwords that contain it. A query's candidates are the headwords that contain
+// all of its trigrams, and only those get read and checked.
+//
+// The sidecar is in .idx format, one "trigram<TAB>postings" line per trigram, where the
+// postings are the ascending word ordinals, delta-encoded in base 36 and comma-separated.
+public class TrigramIndex
+{
+    static final String SIDECAR_KIND = "tri";
+    static final int GRAM_LENGTH = 3;
+    static final char POSTING_SEPARATOR = ',';
+    static final int POSTING_RADIX = 36;
+
+    final IdxReader source;
+    final IdxReader sidecar;
+
+    // A growable list of ints, to keep the postings unboxed while building.
+    static class Postings
+    {
+        int [] ordinals = new int[4];
+        int size = 0;
+
+        void add(int ordinal)
+        {
+            // The same trigram can appear more than once in a word.
+            if (size > 0 && ordinals[size - 1] == ordinal)
+            {
+                return;
+            }
+
+            if (size == ordinals.length)
+            {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+
+            ordinals[size] = ordinal;
+            size += 1;
+        }
+    }
+
+    TrigramIndex(IdxReader source, IdxReader sidecar)
+    {
+        this.source = source;
+        this.sidecar = sidecar;
+    }
+
+    public static boolean isFresh(IdxReader source)
+    {
+        return Sidecar.isFresh(Sidecar.fileFor(source.inputFile, SIDECAR_KIND), source.inputFile);
+    }
+
+    public static TrigramIndex open(IdxReader source) throws IOException, DataFormatException
+    {
+        File sidecarFile = Sidecar.fileFor(source.inputFile, SIDECAR_KIND);
+
+        if (!isFresh(source))
+        {
+            build(source, sidecarFile, new Sidecar.Build());
+        }
+
+        return new TrigramIndex(source, new IdxReader(sidecarFile, source.isMemoryMapped()));
+    }
+
+    public void close() throws IOException
+    {
+        sidecar.close();
+    }
+
+    // The trigrams we index: no whitespace or control characters, which wouldn't survive
+    // the line format (and aren't worth searching on anyway).
+    static ArrayList<String> trigrams(String folded)
+    {
+        ArrayList<String> result = new ArrayList<>();
+        int [] codePoints = new int[folded.codePointCount(0, folded.length())];
+        int n = 0;
+
+        for (int i = 0; i < folded.length(); i += Character.charCount(folded.codePointAt(i)))
+        {
+            codePoints[n] = folded.codePointAt(i);
+            n += 1;
+        }
+
+        for (int i = 0; i + GRAM_LENGTH <= n; i += 1)
+        {
+            boolean usable = true;
+
+            for (int j = i; j < i + GRAM_LENGTH; j += 1)
+            {
+                if (codePoints[j] <= ' ' || Character.isWhitespace(codePoints[j]))
+                {
+                    usable = false;
+                    break;
+                }
+            }
+
+            if (usable)
+            {
+                result.add(new String(codePoints, i, GRAM_LENGTH));
+            }
+        }
+
+        return result;
+    }
+
+    static void build(IdxReader source, File sidecarFile, final Sidecar.Build build)
+            throws IOException, DataFormatException
+    {
+        final HashMap<String, Postings> grams = new HashMap<>();
+
+        // In order, so that the postings come out sorted.
+        source.forEachWord((ordinal, word) -> {
+            for (String gram : trigrams(NormalizedIndex.fold(word)))
+            {
+                Postings postings = grams.get(gram);
+
+                if (postings == null)
+                {
+                    postings = new Postings();
+                    grams.put(gram, postings);
+                }
+
+                postings.add((int) ordinal);
+            }
+
+            return !build.isCancelled();
+        }, true);
+
+        build.check();
+
+        ArrayList<String> lines = new ArrayList<>(grams.size());
+        StringBuilder builder = new StringBuilder();
+
+        for (Map.Entry<String, Postings> entry : grams.entrySet())
+        {
+            Postings postings = entry.getValue();
+            int previous = 0;
+
+            builder.setLength(0);
+            builder.append(entry.getKey()).append(Sidecar.SEPARATOR);
+
+            for (int i = 0; i < postings.size; i += 1)
+            {
+                if (i > 0)
+                {
+                    builder.append(POSTING_SEPARATOR);
+                }
+
+                builder.append(Integer.toString(postings.ordinals[i] - previous, POSTING_RADIX));
+                previous = postings.ordinals[i];
+            }
+
+            lines.add(builder.toString());
+        }
+
+        IdxWriter.write(sidecarFile, lines);
+    }
+
+    // The ordinals of the headwords that contain the trigram, or an empty array.
+    int [] postings(String gram) throws IOException, DataFormatException
+    {
+        ArrayList<String> values = Sidecar.lookup(sidecar, gram, 1);
+
+        if (values.isEmpty())
+        {
+            return new int[0];
+        }
+
+        String [] deltas = values.get(0).split(String.valueOf(POSTING_SEPARATOR));
+        int [] ordinals = new int[deltas.length];
+        int previous = 0;
+
+        for (int i = 0; i < deltas.length; i += 1)
+        {
+            previous += Integer.parseInt(deltas[i], POSTING_RADIX);
+            ordinals[i] = previous;
+        }
+
+        return ordinals;
+    }
+
+    // Intersects two ascending arrays into the first one, returning the new length.
+    static int intersect(int [] a, int aLength, int [] b)
+    {
+        int n = 0;
+        int j = 0;
+
+        for (int i = 0; i < aLength && j < b.length; i += 1)
+        {
+            while (j < b.length && b[j] < a[i])
+            {
+                j += 1;
+            }
+
+            if (j < b.length && b[j] == a[i])
+            {
+                a[n] = a[i];
+                n += 1;
+            }
+        }
+
+        return n;
+    }
+
+    // Headwords containing the substring (folded like NormalizedIndex.fold()),
+    // in word list order.
+    public ArrayList<String> search(String substring, int countLimit)
+            throws IOException, DataFormatException
+    {
+        String folded = NormalizedIndex.fold(substring);
+        ArrayList<String> grams = trigrams(folded);
+        ArrayList<String> result = new ArrayList<>();
+
+        if (countLimit <= 0)
+        {
+            return result;
+        }
+
+        // Too short to have a trigram: there's nothing to narrow it down with.
+        if (grams.isEmpty())
+        {
+            return scan(folded, countLimit);
+        }
+
+        // Start with the rarest trigram, so the candidate list is as short as possible early.
+        ArrayList<int []> lists = new ArrayList<>(grams.size());
+
+        for (String gram : grams)
+        {
+            int [] ordinals = postings(gram);
+
+            if (ordinals.length == 0)
+            {
+                return result;
+            }
+
+            lists.add(ordinals);
+        }
+
+        int [] shortest = lists.get(0);
+
+        for (int [] ordinals : lists)
+        {
+            if (ordinals.length < shortest.length)
+            {
+                shortest = ordinals;
+            }
+        }
+
+        int [] candidates = Arrays.copyOf(shortest, shortest.length);
+        int count = candidates.length;
+
+        for (int [] ordinals : lists)
+        {
+            if (ordinals != shortest)
+            {
+                count = intersect(candidates, count, ordinals);
+            }
+        }
+
+        // Having all the trigrams doesn't mean having them in the right order,
+        // so the candidates still need checking. We read them a batch at a time
+        // and stop as soon as we have enough.
+        int batchSize = Math.max(countLimit * 2, 64);
+
+        for (int start = 0; start < count && result.size() < countLimit; start += batchSize)
+        {
+            int end = Math.min(count, start + batchSize);
+            int [] batch = Arrays.copyOfRange(candidates, start, end);
+
+            for (String word : source.readSortedWords(batch, batch.length))
+            {
+                if (NormalizedIndex.fold(word).contains(folded))
+                {
+                    result.add(word);
+
+                    if (result.size() >= countLimit)
+                    {
+                        break;
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    // The brute-force fallback for one- and two-character queries.
+    ArrayList<String> scan(String folded, int countLimit) throws IOException, DataFormatException
+    {
+        ArrayList<String> result = new ArrayList<>();
+
+        for (int idxChunk = 0; idxChunk < source.entries.size() && result.size() < countLimit;
+             idxChunk += 1)
+        {
+            for (String word : source.readChunkWords(idxChunk))
+            {
+                if (NormalizedIndex.fold(word).contains(folded))
+                {
+                    result.add(word);
+
+                    if (result.size() >= countLimit)
+                    {
+                        break;
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+}
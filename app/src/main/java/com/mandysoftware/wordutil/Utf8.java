@@ -0,0 +1,175 @@
+package com.mandysoftware.wordutil;
+
+// Helpers for working on the raw UTF-8 bytes of inflated chunks without first
+// turning them into Strings. Most words in a chunk get looked at and then rejected,
+// so we only want to pay for a String when a word is actually returned.
+public class Utf8
+{
+    // Returns the index of the '\n' that ends the line starting at `start`,
+    // or `end` if the line runs to the end.
+    static int lineEnd(byte [] buf, int start, int end)
+    {
+        int idx = start;
+
+        while (idx < end && buf[idx] != '\n')
+        {
+            idx += 1;
+        }
+
+        return idx;
+    }
+
+    static int lineEnd(byte [] buf, int start)
+    {
+        return lineEnd(buf, start, buf.length);
+    }
+
+    // Same rule as String.trim(): anything up to and including ' ' is whitespace.
+    // Multi-byte sequences never contain bytes in that range, so this is safe on UTF-8.
+    static int trimStart(byte [] buf, int start, int end)
+    {
+        while (start < end && (buf[start] & 0xFF) <= ' ')
+        {
+            start += 1;
+        }
+
+        return start;
+    }
+
+    static int trimEnd(byte [] buf, int start, int end)
+    {
+        while (end > start && (buf[end - 1] & 0xFF) <= ' ')
+        {
+            end -= 1;
+        }
+
+        return end;
+    }
+
+    // Number of bytes in the sequence that starts with the given lead byte.
+    static int sequenceLength(byte lead)
+    {
+        int b0 = lead & 0xFF;
+
+        if (b0 < 0x80)
+        {
+            return 1;
+        }
+        else if (b0 < 0xE0)
+        {
+            return 2;
+        }
+        else if (b0 < 0xF0)
+        {
+            return 3;
+        }
+
+        return 4;
+    }
+
+    // Decodes the code point whose sequence starts at `idx`.
+    // The caller must make sure the whole sequence is within bounds (see sequenceLength()).
+    static int codePointAt(byte [] buf, int idx)
+    {
+        int b0 = buf[idx] & 0xFF;
+
+        if (b0 < 0x80)
+        {
+            return b0;
+        }
+        else if (b0 < 0xE0)
+        {
+            return ((b0 & 0x1F) << 6) | (buf[idx + 1] & 0x3F);
+        }
+        else if (b0 < 0xF0)
+        {
+            return ((b0 & 0x0F) << 12) | ((buf[idx + 1] & 0x3F) << 6) | (buf[idx + 2] & 0x3F);
+        }
+
+        return ((b0 & 0x07) << 18) | ((buf[idx + 1] & 0x3F) << 12) |
+                ((buf[idx + 2] & 0x3F) << 6) | (buf[idx + 3] & 0x3F);
+    }
+
+    static int [] foldedCodePoints(String text)
+    {
+        int [] codePoints = new int[text.codePointCount(0, text.length())];
+        int idx = 0;
+
+        for (int i = 0; i < text.length(); i += Character.charCount(text.codePointAt(i)))
+        {
+            codePoints[idx] = Character.toLowerCase(text.codePointAt(i));
+            idx += 1;
+        }
+
+        return codePoints;
+    }
+
+    // A case-insensitive prefix that can be matched straight against UTF-8 bytes.
+    //
+    // Case folding is done one code point at a time (Character.toLowerCase()), on both
+    // the prefix and the word. That's the same as String.toLowerCase(Locale.ROOT) except
+    // for the handful of characters whose lower case form is more than one character.
+    public static class Prefix
+    {
+        final String text;
+        final int [] codePoints;
+
+        public Prefix(String prefix)
+        {
+            text = prefix;
+            codePoints = foldedCodePoints(prefix);
+        }
+
+        public int length()
+        {
+            return codePoints.length;
+        }
+
+        // Does the word in buf[start, end) start with this prefix?
+        public boolean matches(byte [] buf, int start, int end)
+        {
+            int idx = start;
+
+            for (int codePoint : codePoints)
+            {
+                if (idx >= end)
+                {
+                    return false;
+                }
+
+                byte lead = buf[idx];
+
+                // Plain ASCII doesn't need decoding.
+                if (lead >= 0)
+                {
+                    int ch = lead;
+
+                    if (ch >= 'A' && ch <= 'Z')
+                    {
+                        ch += 'a' - 'A';
+                    }
+
+                    if (ch != codePoint)
+                    {
+                        return false;
+                    }
+
+                    idx += 1;
+                    continue;
+                }
+
+                int len = sequenceLength(lead);
+
+                if (idx + len > end ||
+                        Character.toLowerCase(codePointAt(buf, idx)) != codePoint)
+                {
+                    return false;
+                }
+
+                idx += len;
+            }
+
+            return true;
+        }
+    }
+}
@@ -1,25 +1,73 @@
 package com.mandysoftware.wordutil;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.IntBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.DataFormatException;
 
 public class WapReader {
+    // Buckets inflate to a few kB each, so this keeps a few hundred of them around,
+    // enough for the words a user keeps coming back to.
+    public static final long DEFAULT_BLOCK_CACHE_SIZE = 1024 * 1024;
+
     final File inputFile;
-    final FileInputStream inputStream;
+    final BlockFile blockFile;
     final long fileSize;
 
     final ArrayList<IndexEntry.Lookup> entries = new ArrayList<>();
     long endofs = 0;
 
+    final BlockCache blockCache = new BlockCache(DEFAULT_BLOCK_CACHE_SIZE);
+
+    // Opened on first use; see openRedirectTable() and openRedirectTableIfBuilt().
+    // Lookups read it without taking the lock.
+    volatile RedirectTable redirectTable = null;
+    LinkIndex linkIndex = null;
+
+    // The outcome of lookupWords(): the definitions that were found, keyed by word in the
+    // order the words were given, and the words that weren't found.
+    public static class BatchResult
+    {
+        final LinkedHashMap<String, String> definitions = new LinkedHashMap<>();
+        final ArrayList<String> misses = new ArrayList<>();
+
+        public Map<String, String> getDefinitions()
+        {
+            return definitions;
+        }
+
+        public List<String> getMisses()
+        {
+            return misses;
+        }
+    }
+
+    // Gets each entry as its headword and the definition in block[start, end).
+    // The block must not be written to.
+    public interface EntryVisitor
+    {
+        boolean visit(String word, byte [] block, int start, int end);
+    }
+
     static int findEndlInRawUtf8(byte [] chunk, int i0)
     {
         int idx = i0 + 1;
@@ -32,50 +80,66 @@ public class WapReader {
         return idx;
     }
 
-    static class PeekWord implements Search.Peek
+    public WapReader(File wapFile, boolean memoryMapped) throws IOException
     {
-        static final PeekWord Instance = new PeekWord();
-
-        @Override
-        public Comparable peek(final List arr, final int idx, final Object param)
-        {
-            byte [] chunk = (byte []) param;
-            int wordStart = (Integer) arr.get(idx);
-            int idxEndl = findEndlInRawUtf8(chunk, wordStart);
+        inputFile = wapFile;
+        blockFile = new BlockFile(wapFile, memoryMapped);
+        fileSize = inputFile.length();
 
-            return new String(chunk, wordStart, idxEndl - wordStart, StandardCharsets.UTF_8);
-        }
+        readIndex();
     }
 
     public WapReader(File wapFile) throws IOException
     {
-        inputFile = wapFile;
-        inputStream = new FileInputStream(wapFile);
-        fileSize = inputFile.length();
+        this(wapFile, false);
+    }
 
-        readIndex();
+    public boolean isMemoryMapped()
+    {
+        return blockFile.isMemoryMapped();
     }
 
     public void close() throws IOException
     {
-        inputStream.close();
+        if (redirectTable != null)
+        {
+            redirectTable.close();
+            redirectTable = null;
+        }
+
+        if (linkIndex != null)
+        {
+            linkIndex.close();
+            linkIndex = null;
+        }
+
+        blockCache.clear();
+        blockFile.close();
+    }
+
+    // Sets the byte budget of the inflated block cache. Zero disables caching.
+    public void setBlockCacheSize(long capacityBytes)
+    {
+        blockCache.setCapacity(capacityBytes);
+    }
+
+    // Exposed mainly so the hit/miss counters can be inspected.
+    public BlockCache getBlockCache()
+    {
+        return blockCache;
     }
 
     protected void readIndex() throws IOException
     {
         long idxendofs = fileSize - 4;
-        byte [] fourBytes = new byte[4];
 
-        inputStream.getChannel().position(idxendofs);
-        inputStream.read(fourBytes);
-        endofs = java.nio.ByteBuffer.wrap(fourBytes)
-                .order(ByteOrder.BIG_ENDIAN).getInt();
+        endofs = Integer.toUnsignedLong(blockFile.readInt(idxendofs));
 
         int nidx = (int) ((idxendofs - endofs) / 6);
-        inputStream.getChannel().position(endofs);
         entries.clear();
 
-        DataInputStream dis = new DataInputStream(inputStream);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(
+                blockFile.read(endofs, (int) (idxendofs - endofs))));
         for (int i = 0; i < nidx; i += 1)
         {
             int ofs = dis.readInt();
@@ -88,26 +152,58 @@ public class WapReader {
     {
         int key = Key.MakeKey(word);
 
-        if (key >= entries.size() || entries.get(key).key != key)
+        if (key >= 0 && key < entries.size() && entries.get(key).key == key)
         {
-            key = Search.BinarySearch(
-                entries, key, IndexEntry.Lookup.Peek.Instance,
-                null, Search.Mode.EQ
-            );
+            return key;
         }
 
-        return key;
+        // A plain binary search on the primitive keys, since this runs on every lookup
+        // and Search.BinarySearch() would box a key for every comparison.
+        int lo = 0;
+        int hi = entries.size() - 1;
+
+        while (lo <= hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            int midKey = entries.get(mid).key;
+
+            if (midKey == key)
+            {
+                return mid;
+            }
+            else if (midKey < key)
+            {
+                lo = mid + 1;
+            }
+            else
+            {
+                hi = mid - 1;
+            }
+        }
+
+        return -1;
     }
 
-    public byte [] lookupEntry(String name) throws IOException, DataFormatException
+    // Returns the inflated bytes of the given bucket, from the cache if possible.
+    byte [] readBlock(int ic) throws IOException, DataFormatException
     {
-        int ic = lookupIndex(name);
+        byte [] rawBytes = blockCache.get(ic);
 
-        if (ic == -1)
+        if (rawBytes != null)
         {
-            throw new IllegalArgumentException("Word index entry not found.");
+            return rawBytes;
         }
 
+        rawBytes = inflateBlock(ic);
+
+        blockCache.put(ic, rawBytes);
+
+        return rawBytes;
+    }
+
+    // Reads and inflates the given bucket, bypassing the cache.
+    byte [] inflateBlock(int ic) throws IOException, DataFormatException
+    {
         long ofsnow = entries.get(ic).value;
 
         int inext = ic + 1;
@@ -118,55 +214,725 @@ public class WapReader {
             ofsnext = entries.get(inext).value;
         }
 
-        inputStream.getChannel().position(ofsnow);
-        byte [] compressedBytes = new byte[(int)(ofsnext - ofsnow)];
-        inputStream.read(compressedBytes);
+        return blockFile.inflate(ofsnow, ofsnext);
+    }
+
+    // Calls the visitor for every entry in buckets [firstBucket, lastBucket), in file order.
+    // Returns false if the visitor asked to stop (or another task did, see forEachEntry()).
+    boolean visitEntries(EntryVisitor visitor, int firstBucket, int lastBucket,
+                         AtomicBoolean stopped) throws IOException, DataFormatException
+    {
+        for (int ic = firstBucket; ic < lastBucket && !stopped.get(); ic += 1)
+        {
+            byte [] rawBytes = inflateBlock(ic);
+            ByteBuffer view = ByteBuffer.wrap(rawBytes).order(ByteOrder.BIG_ENDIAN);
+            int iend = rawBytes.length - 4;
+            int ofsidx = view.getInt(iend);
+            int nwds = (iend - ofsidx) / 4;
+
+            for (int i = 0; i < nwds; i += 1)
+            {
+                int wordStart = view.getInt(ofsidx + 4 * i);
+                int wordEnd = findEndlInRawUtf8(rawBytes, wordStart);
+                int entryEnd = i + 1 < nwds ? view.getInt(ofsidx + 4 * (i + 1)) : ofsidx;
+                String word = new String(rawBytes, wordStart, wordEnd - wordStart,
+                        StandardCharsets.UTF_8);
+
+                if (!visitor.visit(word, rawBytes, Math.min(wordEnd + 1, entryEnd), entryEnd))
+                {
+                    stopped.set(true);
+
+                    return false;
+                }
+            }
+        }
+
+        return !stopped.get();
+    }
+
+    // Calls the visitor for every entry in the dictionary, e.g. to build a sidecar index
+    // over the definitions. Blocks are inflated without going through the cache, since
+    // each one is only needed once.
+    //
+    // In parallel mode the buckets are split into a few ranges per pool thread, the
+    // visitor is called from several threads at once, and the entries come in no
+    // particular order. Otherwise they come in file (bucket) order on the calling thread.
+    // Returns false if the visitor asked to stop before the end.
+    public boolean forEachEntry(final EntryVisitor visitor, boolean parallel)
+            throws IOException, DataFormatException
+    {
+        final AtomicBoolean stopped = new AtomicBoolean(false);
+
+        if (!parallel)
+        {
+            return visitEntries(visitor, 0, entries.size(), stopped);
+        }
+
+        int rangeCount = Math.max(1, Math.min(entries.size(), Parallel.getParallelism() * 4));
+        ArrayList<Parallel.Task<Boolean>> tasks = new ArrayList<>(rangeCount);
+
+        for (int r = 0; r < rangeCount; r += 1)
+        {
+            final int firstBucket = (int) ((long) entries.size() * r / rangeCount);
+            final int lastBucket = (int) ((long) entries.size() * (r + 1) / rangeCount);
+
+            tasks.add(() -> visitEntries(visitor, firstBucket, lastBucket, stopped));
+        }
+
+        Parallel.invokeAll(tasks);
+
+        return !stopped.get();
+    }
+
+    // Compares the UTF-8 encoded key with the word in block[start, end), in the same order
+    // as String.compareTo(), without decoding the word.
+    //
+    // Byte order and String order are the same except that String order puts characters
+    // above the surrogates (U+E000 to U+FFFF, lead bytes 0xEE and 0xEF) after supplementary
+    // characters (lead bytes 0xF0 and up), so those two lead bytes are moved up to match.
+    static int compareUtf8(byte [] key, byte [] block, int start, int end)
+    {
+        int len = Math.min(key.length, end - start);
 
-        byte [] rawBytes = Compression.Inflate(compressedBytes);
+        for (int i = 0; i < len; i += 1)
+        {
+            int a = key[i] & 0xFF;
+            int b = block[start + i] & 0xFF;
+
+            if (a != b)
+            {
+                if (a >= 0xEE && b >= 0xEE)
+                {
+                    a = a < 0xF0 ? a + 0x10 : a;
+                    b = b < 0xF0 ? b + 0x10 : b;
+                }
+
+                return a - b;
+            }
+        }
 
+        return key.length - (end - start);
+    }
+
+    // Finds the word in an inflated block and returns the [start, end) range of its entry,
+    // packed as (start << 32 | end), or -1 if it's not there.
+    //
+    // The word offsets are read straight out of the block's trailer, and the key is compared
+    // with the block bytes directly, so the search itself allocates nothing beyond
+    // the one ByteBuffer view of the block.
+    static long findEntry(byte [] rawBytes, byte [] key)
+    {
+        ByteBuffer view = ByteBuffer.wrap(rawBytes).order(ByteOrder.BIG_ENDIAN);
         int iend = rawBytes.length - 4;
-        int ofsidx = java.nio.ByteBuffer.wrap(rawBytes, iend, 4)
-                .order(ByteOrder.BIG_ENDIAN).getInt();
+        int ofsidx = view.getInt(iend);
         int nwds = (iend - ofsidx) / 4;
+        int lo = 0;
+        int hi = nwds - 1;
 
-        IntBuffer idxlistbuf = ByteBuffer.wrap(rawBytes, ofsidx, iend - ofsidx)
-                .order(ByteOrder.BIG_ENDIAN)
-                .asIntBuffer();
-        int [] idxlistarr = new int[nwds];
+        while (lo <= hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            int wordStart = view.getInt(ofsidx + 4 * mid);
+            int wordEnd = findEndlInRawUtf8(rawBytes, wordStart);
+            int diff = compareUtf8(key, rawBytes, wordStart, wordEnd);
+
+            if (diff == 0)
+            {
+                int entryEnd = mid + 1 < nwds ? view.getInt(ofsidx + 4 * (mid + 1)) : ofsidx;
+
+                return ((long) (wordEnd + 1) << 32) | entryEnd;
+            }
+            else if (diff < 0)
+            {
+                hi = mid - 1;
+            }
+            else
+            {
+                lo = mid + 1;
+            }
+        }
 
-        idxlistbuf.get(idxlistarr);
+        return -1;
+    }
 
-        List<Integer> idxlist = new ArrayList<>(idxlistarr.length);
+    // The entry of the word as a slice of its inflated block, without copying it.
+    // The block may be shared with the cache and other callers, so it must not be written to.
+    ByteBuffer findEntryBuffer(String name) throws IOException, DataFormatException
+    {
+        int ic = lookupIndex(name);
 
-        for (int idx : idxlistarr)
+        if (ic == -1)
         {
-            idxlist.add(idx);
+            throw new IllegalArgumentException("Word index entry not found.");
         }
 
-        int iw = Search.BinarySearch(idxlist, name, PeekWord.Instance, rawBytes, Search.Mode.EQ);
+        byte [] rawBytes = readBlock(ic);
+        long range = findEntry(rawBytes, name.getBytes(StandardCharsets.UTF_8));
 
-        if (iw == -1)
+        if (range == -1)
         {
             throw new IllegalArgumentException("Word not found.");
         }
 
-        int entryStart = findEndlInRawUtf8(rawBytes, idxlist.get(iw)) + 1;
-        int entryEnd = ofsidx;
+        int entryStart = (int) (range >>> 32);
+        int entryEnd = (int) range;
+
+        return ByteBuffer.wrap(rawBytes, entryStart, entryEnd - entryStart).slice();
+    }
 
-        if (iw + 1 < idxlist.size())
+    public byte [] lookupEntry(String name) throws IOException, DataFormatException
+    {
+        ByteBuffer entry = findEntryBuffer(name);
+        byte [] entryBytes = new byte[entry.remaining()];
+
+        entry.get(entryBytes);
+
+        return entryBytes;
+    }
+
+    // The UTF-8 bytes of the word's entry as a read-only view into its inflated block.
+    // Nothing is copied, so this costs the same however long the entry is.
+    public ByteBuffer lookupEntryBuffer(String name) throws IOException, DataFormatException
+    {
+        return findEntryBuffer(name).asReadOnlyBuffer();
+    }
+
+    // The word's entry as a Reader that decodes the UTF-8 a buffer at a time as it's read,
+    // for callers that only need the start of a long entry.
+    public Reader openEntryReader(String name) throws IOException, DataFormatException
+    {
+        ByteBuffer entry = findEntryBuffer(name);
+
+        return new InputStreamReader(new ByteArrayInputStream(entry.array(),
+                entry.arrayOffset(), entry.remaining()), StandardCharsets.UTF_8);
+    }
+
+    // At most the first `maxChars` characters of the word's entry. The decoder stops as soon
+    // as that many characters are out, so only about that much of the entry is decoded,
+    // however long it is. A surrogate pair is never cut in half.
+    public String previewWord(String word, int maxChars) throws IOException, DataFormatException
+    {
+        if (maxChars < 0)
         {
-            entryEnd = idxlist.get(iw + 1);
+            throw new IllegalArgumentException("maxChars must not be negative.");
         }
 
-        byte [] entryBytes = new byte[entryEnd - entryStart];
+        ByteBuffer entry = lookupEntryBuffer(word);
+        CharBuffer chars = CharBuffer.allocate(maxChars);
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
 
-        System.arraycopy(rawBytes, entryStart, entryBytes, 0, entryEnd - entryStart);
+        // Overflow just means the preview is full.
+        if (decoder.decode(entry, chars, true).isUnderflow())
+        {
+            decoder.flush(chars);
+        }
 
-        return entryBytes;
+        chars.flip();
+
+        return chars.toString();
+    }
+
+    // Decodes an entry straight out of its block, without copying it out first.
+    static String decode(ByteBuffer entry)
+    {
+        return new String(entry.array(), entry.arrayOffset() + entry.position(),
+                entry.remaining(), StandardCharsets.UTF_8);
     }
 
     public String lookupWord(String word) throws IOException, DataFormatException
     {
-        return new String(lookupEntry(word), StandardCharsets.UTF_8);
+        return decode(findEntryBuffer(word));
+    }
+
+    // Looks up the word as it is, and if it's not there, looks up the headwords that
+    // the normalized index says it's a variant of (other accents, case or apostrophes).
+    public String lookupWord(String word, NormalizedIndex normalizedIndex)
+            throws IOException, DataFormatException
+    {
+        return decode(findEntryBuffer(word, normalizedIndex));
+    }
+
+    ByteBuffer findEntryBuffer(String word, NormalizedIndex normalizedIndex)
+            throws IOException, DataFormatException
+    {
+        IllegalArgumentException notFound;
+
+        try
+        {
+            return findEntryBuffer(word);
+        }
+        catch (IllegalArgumentException err)
+        {
+            if (normalizedIndex == null)
+            {
+                throw err;
+            }
+
+            notFound = err;
+        }
+
+        for (String variant : normalizedIndex.resolve(word))
+        {
+            if (variant.equals(word))
+            {
+                continue;
+            }
+
+            try
+            {
+                return findEntryBuffer(variant);
+            }
+            catch (IllegalArgumentException err)
+            {
+                // The .idx and .wap don't always agree; try the next variant.
+            }
+        }
+
+        throw notFound;
+    }
+
+    // Looks up many words at once. The words are grouped by bucket, so each block is read
+    // and inflated only once however many of the words share it, and the buckets are
+    // visited in file order (the buckets are stored in key order), so the reads go
+    // through the file front to back. Redirect entries come back as they are; see
+    // lookupWordsFollowingRedirects().
+    public BatchResult lookupWords(Collection<String> words) throws IOException, DataFormatException
+    {
+        ArrayList<String> distinct = new ArrayList<>(new LinkedHashSet<>(words));
+        String [] definitions = new String [distinct.size()];
+
+        // (bucket << 32 | word index), so that sorting groups the words by bucket.
+        long [] order = new long [distinct.size()];
+        int orderCount = 0;
+
+        for (int i = 0; i < distinct.size(); i += 1)
+        {
+            int ic = lookupIndex(distinct.get(i));
+
+            if (ic != -1)
+            {
+                order[orderCount] = ((long) ic << 32) | i;
+                orderCount += 1;
+            }
+        }
+
+        Arrays.sort(order, 0, orderCount);
+
+        int currentBucket = -1;
+        byte [] rawBytes = null;
+
+        for (int n = 0; n < orderCount; n += 1)
+        {
+            int ic = (int) (order[n] >>> 32);
+            int i = (int) order[n];
+
+            if (ic != currentBucket)
+            {
+                rawBytes = readBlock(ic);
+                currentBucket = ic;
+            }
+
+            long range = findEntry(rawBytes, distinct.get(i).getBytes(StandardCharsets.UTF_8));
+
+            if (range != -1)
+            {
+                int entryStart = (int) (range >>> 32);
+                int entryEnd = (int) range;
+
+                definitions[i] = new String(rawBytes, entryStart, entryEnd - entryStart,
+                        StandardCharsets.UTF_8);
+            }
+        }
+
+        BatchResult result = new BatchResult();
+
+        for (int i = 0; i < distinct.size(); i += 1)
+        {
+            if (definitions[i] != null)
+            {
+                result.definitions.put(distinct.get(i), definitions[i]);
+            }
+            else
+            {
+                result.misses.add(distinct.get(i));
+            }
+        }
+
+        return result;
+    }
+
+    // The batch version of lookupWord(word, normalizedIndex): the words that aren't
+    // headwords as they are get a second chance through their normalized variants.
+    public BatchResult lookupWords(Collection<String> words, NormalizedIndex normalizedIndex)
+            throws IOException, DataFormatException
+    {
+        BatchResult direct = lookupWords(words);
+
+        if (normalizedIndex == null || direct.misses.isEmpty())
+        {
+            return direct;
+        }
+
+        BatchResult result = new BatchResult();
+        HashSet<String> misses = new HashSet<>();
+
+        for (String word : direct.misses)
+        {
+            try
+            {
+                direct.definitions.put(word, lookupWord(word, normalizedIndex));
+            }
+            catch (IllegalArgumentException err)
+            {
+                misses.add(word);
+            }
+        }
+
+        // Back to the order the words were given in.
+        for (String word : new LinkedHashSet<>(words))
+        {
+            if (misses.contains(word))
+            {
+                result.misses.add(word);
+            }
+            else
+            {
+                result.definitions.put(word, direct.definitions.get(word));
+            }
+        }
+
+        return result;
+    }
+
+    // The index of where redirect entries lead. Building it takes a pass over every entry
+    // in the dictionary, but only the first time.
+    public synchronized RedirectTable openRedirectTable() throws IOException, DataFormatException
+    {
+        if (redirectTable == null)
+        {
+            redirectTable = RedirectTable.open(this);
+        }
+
+        return redirectTable;
+    }
+
+    // Like openRedirectTable(), but never builds it: null until it has been built.
+    public synchronized RedirectTable openRedirectTableIfBuilt()
+            throws IOException, DataFormatException
+    {
+        if (redirectTable == null && RedirectTable.isFresh(this))
+        {
+            redirectTable = RedirectTable.open(this);
+        }
+
+        return redirectTable;
+    }
+
+    // Like lookupWord(word, normalizedIndex), but if the entry is a redirect, returns the
+    // entry it leads to instead. With the redirect table open, the whole chain is one
+    // sidecar lookup and only the target's block is inflated; without it, the chain is
+    // followed one entry at a time.
+    //
+    // A chain that loops or leads nowhere comes back as the last redirect entry reached.
+    public String lookupFollowingRedirects(String word, NormalizedIndex normalizedIndex)
+            throws IOException, DataFormatException
+    {
+        return decode(findFollowingRedirects(word, normalizedIndex));
+    }
+
+    // The same, with only the sections in the given languages (see lookupLanguages()).
+    public String lookupFollowingRedirects(String word, NormalizedIndex normalizedIndex,
+                                           Collection<String> languages)
+            throws IOException, DataFormatException
+    {
+        return extractSections(findFollowingRedirects(word, normalizedIndex), languages);
+    }
+
+    // Redirect entries are recognized from their bytes, so only the entry at the end
+    // of the chain ever gets decoded.
+    ByteBuffer findFollowingRedirects(String word, NormalizedIndex normalizedIndex)
+            throws IOException, DataFormatException
+    {
+        RedirectTable table = redirectTable;
+
+        if (table != null)
+        {
+            String target = table.resolve(word);
+
+            if (target != null)
+            {
+                try
+                {
+                    return findEntryBuffer(target, normalizedIndex);
+                }
+                catch (IllegalArgumentException err)
+                {
+                    // A dangling redirect; fall back to showing the redirect itself.
+                }
+            }
+        }
+
+        ByteBuffer entry = findEntryBuffer(word, normalizedIndex);
+        HashSet<String> seen = new HashSet<>();
+        String target = redirectTarget(entry);
+
+        seen.add(word);
+
+        while (target != null && seen.add(target) && seen.size() <= RedirectTable.MAX_HOPS)
+        {
+            try
+            {
+                entry = findEntryBuffer(target, normalizedIndex);
+            }
+            catch (IllegalArgumentException err)
+            {
+                break;
+            }
+
+            target = redirectTarget(entry);
+        }
+
+        return entry;
+    }
+
+    // The batch version of lookupFollowingRedirects(word, normalizedIndex): redirect entries
+    // among the definitions are replaced by the entries they lead to. The targets are looked
+    // up together, one batch per hop; with the redirect table open, each chain is one hop.
+    //
+    // A chain that loops or leads nowhere comes back as the last redirect entry reached.
+    public BatchResult lookupWordsFollowingRedirects(Collection<String> words,
+                                                     NormalizedIndex normalizedIndex)
+            throws IOException, DataFormatException
+    {
+        BatchResult result = lookupWords(words, normalizedIndex);
+        RedirectTable table = redirectTable;
+
+        // Where each redirected word's chain goes next, and where it has already been.
+        LinkedHashMap<String, String> pending = new LinkedHashMap<>();
+        HashMap<String, HashSet<String>> seen = new HashMap<>();
+
+        for (Map.Entry<String, String> entry : result.definitions.entrySet())
+        {
+            String word = entry.getKey();
+            String target = RedirectTable.redirectTarget(entry.getValue());
+
+            if (target == null)
+            {
+                continue;
+            }
+
+            String end = table != null ? table.resolve(word) : null;
+            HashSet<String> path = new HashSet<>();
+
+            path.add(word);
+            seen.put(word, path);
+
+            if (path.add(end != null ? end : target))
+            {
+                pending.put(word, end != null ? end : target);
+            }
+        }
+
+        for (int hop = 0; hop < RedirectTable.MAX_HOPS && !pending.isEmpty(); hop += 1)
+        {
+            BatchResult targets = lookupWords(pending.values(), normalizedIndex);
+            LinkedHashMap<String, String> next = new LinkedHashMap<>();
+
+            for (Map.Entry<String, String> entry : pending.entrySet())
+            {
+                String word = entry.getKey();
+                String definition = targets.definitions.get(entry.getValue());
+
+                if (definition == null)
+                {
+                    continue;
+                }
+
+                result.definitions.put(word, definition);
+
+                String target = RedirectTable.redirectTarget(definition);
+
+                if (target != null && seen.get(word).add(target))
+                {
+                    next.put(word, target);
+                }
+            }
+
+            pending = next;
+        }
+
+        return result;
+    }
+
+    static String redirectTarget(ByteBuffer entry)
+    {
+        int start = entry.arrayOffset() + entry.position();
+
+        return RedirectTable.redirectTarget(entry.array(), start, start + entry.remaining());
+    }
+
+    public String lookupFollowingRedirects(String word) throws IOException, DataFormatException
+    {
+        return lookupFollowingRedirects(word, null);
+    }
+
+    // The index of which headwords link to which words. Building it takes a pass over
+    // every entry in the dictionary, but only the first time.
+    public synchronized LinkIndex openLinkIndex() throws IOException, DataFormatException
+    {
+        if (linkIndex == null)
+        {
+            linkIndex = LinkIndex.open(this);
+        }
+
+        return linkIndex;
+    }
+
+    // Like openLinkIndex(), but never builds it: null until it has been built.
+    public synchronized LinkIndex openLinkIndexIfBuilt() throws IOException, DataFormatException
+    {
+        if (linkIndex == null && LinkIndex.isFresh(this))
+        {
+            linkIndex = LinkIndex.open(this);
+        }
+
+        return linkIndex;
+    }
+
+    // The headwords whose definitions link to the word, i.e. the words it's a translation
+    // of: "яблуко" gives "apple" (among others).
+    public ArrayList<String> wordsLinkingTo(String target, int countLimit)
+            throws IOException, DataFormatException
+    {
+        return openLinkIndex().linkingTo(target, countLimit);
+    }
+
+    // The length of the "{{=xx=}}" marker line at block[idx, end), up to but not including
+    // its newline, or -1 if there's no marker there. The language code is at idx + 3.
+    static int markerLength(byte [] block, int idx, int end)
+    {
+        if (idx + 6 > end || block[idx] != '{' || block[idx + 1] != '{' || block[idx + 2] != '=')
+        {
+            return -1;
+        }
+
+        for (int i = idx + 3; i + 2 < end && block[i] != '\n'; i += 1)
+        {
+            if (block[i] == '=' && block[i + 1] == '}' && block[i + 2] == '}')
+            {
+                int lineEnd = i + 3;
+
+                while (lineEnd < end && block[lineEnd] != '\n')
+                {
+                    lineEnd += 1;
+                }
+
+                return lineEnd - idx;
+            }
+        }
+
+        return -1;
+    }
+
+    // Is the language code of the marker at block[idx] one of the requested ones?
+    static boolean markerMatches(byte [] block, int idx, byte [][] languages)
+    {
+        int codeStart = idx + 3;
+        int codeEnd = codeStart;
+
+        while (!(block[codeEnd] == '=' && block[codeEnd + 1] == '}'))
+        {
+            codeEnd += 1;
+        }
+
+        // "{{= en =}}" is the same as "{{=en=}}".
+        while (codeStart < codeEnd && block[codeStart] == ' ')
+        {
+            codeStart += 1;
+        }
+
+        while (codeEnd > codeStart && block[codeEnd - 1] == ' ')
+        {
+            codeEnd -= 1;
+        }
+
+        for (byte [] language : languages)
+        {
+            if (language.length == codeEnd - codeStart &&
+                    compareUtf8(language, block, codeStart, codeEnd) == 0)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Decodes only the {{=xx=}} sections of the entry whose language is in the given set,
+    // marker lines included, in the order they appear. The rest of the entry is skipped
+    // over as bytes and never decoded. The text before the first marker, if any, counts
+    // as language "". Returns an empty string if none of the languages are there.
+    static String extractSections(ByteBuffer entry, Collection<String> languages)
+    {
+        byte [] block = entry.array();
+        int start = entry.arrayOffset() + entry.position();
+        int end = start + entry.remaining();
+        byte [][] wanted = new byte [languages.size()][];
+        int n = 0;
+
+        for (String language : languages)
+        {
+            wanted[n] = language.trim().getBytes(StandardCharsets.UTF_8);
+            n += 1;
+        }
+
+        StringBuilder builder = new StringBuilder();
+        boolean matching = languages.contains("");
+        int sectionStart = start;
+        int idx = start;
+
+        while (idx < end)
+        {
+            int length = markerLength(block, idx, end);
+
+            if (length != -1)
+            {
+                if (matching && idx > sectionStart)
+                {
+                    builder.append(new String(block, sectionStart, idx - sectionStart,
+                            StandardCharsets.UTF_8));
+                }
+
+                matching = markerMatches(block, idx, wanted);
+                sectionStart = idx;
+                idx += length;
+            }
+
+            // On to the start of the next line.
+            while (idx < end && block[idx] != '\n')
+            {
+                idx += 1;
+            }
+
+            idx += 1;
+        }
+
+        if (matching && end > sectionStart)
+        {
+            builder.append(new String(block, sectionStart, end - sectionStart,
+                    StandardCharsets.UTF_8));
+        }
+
+        return builder.toString();
+    }
+
+    // Like lookupWord(), but returns only the {{=xx=}} sections in the given languages
+    // (e.g. "uk" and "en" out of an entry with dozens of them); see extractSections().
+    public String lookupLanguages(String word, Collection<String> languages)
+            throws IOException, DataFormatException
+    {
+        return extractSections(findEntryBuffer(word), languages);
     }
 }
@@ -0,0 +1,404 @@
+package com.mandysoftware.wordutil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// The structure of a wikitext definition: its language sections ({{=en=}}), the headings
+// in each (===Вимова===), and the senses (# ...) and links ([[яблуко]]) under each heading.
+//
+// Parsing is lazy. Creating an entry only finds where its language sections start, and
+// each section is split into headings, senses and links the first time it's asked for,
+// so showing one language of a long pan-lingual entry never tokenises the others.
+// The parsed parts are kept, so an entry can be shown again without parsing it again;
+// see WikiEntryCache. Entries are safe to share between threads.
+public class WikiEntry
+{
+    // A [[target]] or [[target|label]] link.
+    public static class Link
+    {
+        final String target;
+        final String label;
+
+        Link(String target, String label)
+        {
+            this.target = target;
+            this.label = label;
+        }
+
+        public String getTarget()
+        {
+            return target;
+        }
+
+        // The text shown for the link: the label if it has one, otherwise the target.
+        public String getLabel()
+        {
+            return label;
+        }
+
+        // Links like [[Файл:...]], [[Категорія:...]] or [[en:apple]] point at files,
+        // categories and other wikis rather than at words.
+        public boolean isNamespaced()
+        {
+            return WikiEntry.isNamespaced(target);
+        }
+    }
+
+    // A heading and everything under it up to the next heading. The text of a section
+    // before its first heading goes under a heading with level 0 and an empty title.
+    public static class Heading
+    {
+        final int level;
+        final String title;
+        final ArrayList<String> senses = new ArrayList<>();
+        final ArrayList<Link> links = new ArrayList<>();
+
+        // The text under the heading is source[bodyStart, bodyEnd).
+        String source = "";
+        int bodyStart = 0;
+        int bodyEnd = 0;
+
+        Heading(int level, String title)
+        {
+            this.level = level;
+            this.title = title;
+        }
+
+        public int getLevel()
+        {
+            return level;
+        }
+
+        public String getTitle()
+        {
+            return title;
+        }
+
+        // The numbered senses ("# ..." lines), without the "#". Examples ("#:") and
+        // quotations ("#*") aren't senses of their own.
+        public List<String> getSenses()
+        {
+            return senses;
+        }
+
+        public List<Link> getLinks()
+        {
+            return links;
+        }
+
+        // Everything under the heading, as wikitext.
+        public String getText()
+        {
+            return source.substring(bodyStart, bodyEnd);
+        }
+
+        boolean isEmpty()
+        {
+            return level == 0 && source.substring(bodyStart, bodyEnd).trim().isEmpty();
+        }
+    }
+
+    // One language section, from its {{=xx=}} marker to the next one.
+    // The text before the first marker, if any, is a section with an empty language code.
+    public class Section
+    {
+        final String language;
+        final int start;
+        final int end;
+
+        // Null until the section is first looked into.
+        ArrayList<Heading> headings = null;
+
+        Section(String language, int start, int end)
+        {
+            this.language = language;
+            this.start = start;
+            this.end = end;
+        }
+
+        public String getLanguage()
+        {
+            return language;
+        }
+
+        public String getText()
+        {
+            return text.substring(start, end);
+        }
+
+        public synchronized List<Heading> getHeadings()
+        {
+            if (headings == null)
+            {
+                headings = parseHeadings(text, start, end);
+            }
+
+            return headings;
+        }
+
+        public List<String> getSenses()
+        {
+            ArrayList<String> senses = new ArrayList<>();
+
+            for (Heading heading : getHeadings())
+            {
+                senses.addAll(heading.senses);
+            }
+
+            return senses;
+        }
+
+        public List<Link> getLinks()
+        {
+            ArrayList<Link> links = new ArrayList<>();
+
+            for (Heading heading : getHeadings())
+            {
+                links.addAll(heading.links);
+            }
+
+            return links;
+        }
+
+        synchronized boolean isParsed()
+        {
+            return headings != null;
+        }
+    }
+
+    final String text;
+    final ArrayList<Section> sections = new ArrayList<>();
+
+    public WikiEntry(String text)
+    {
+        this.text = text;
+
+        findSections();
+    }
+
+    // The language code of a "{{=xx=}}" marker line in text[start, end), or null if the
+    // line isn't one.
+    static String sectionLanguage(String text, int start, int end)
+    {
+        if (!text.startsWith("{{=", start))
+        {
+            return null;
+        }
+
+        int close = text.indexOf("=}}", start + 3);
+
+        if (close == -1 || close > end)
+        {
+            return null;
+        }
+
+        return text.substring(start + 3, close).trim();
+    }
+
+    // Only looks at the line starts that could be markers, without splitting the text up.
+    void findSections()
+    {
+        String language = "";
+        int sectionStart = 0;
+        int idx = text.startsWith("{{=") ? 0 : text.indexOf("\n{{=");
+
+        while (idx != -1)
+        {
+            int lineStart = text.charAt(idx) == '\n' ? idx + 1 : idx;
+            int lineEnd = text.indexOf('\n', lineStart);
+
+            if (lineEnd == -1)
+            {
+                lineEnd = text.length();
+            }
+
+            String marker = sectionLanguage(text, lineStart, lineEnd);
+
+            if (marker != null)
+            {
+                // A section for the text before the first marker only if there's any.
+                if (!language.isEmpty() ||
+                        !text.substring(sectionStart, lineStart).trim().isEmpty())
+                {
+                    sections.add(new Section(language, sectionStart, lineStart));
+                }
+
+                language = marker;
+                sectionStart = Math.min(lineEnd + 1, text.length());
+            }
+
+            idx = text.indexOf("\n{{=", lineEnd);
+        }
+
+        if (text.length() > sectionStart || !language.isEmpty())
+        {
+            sections.add(new Section(language, sectionStart, text.length()));
+        }
+    }
+
+    // The heading level and title of a "== Title ==" line, or null if it isn't one.
+    static Heading parseHeading(String line)
+    {
+        int level = 0;
+
+        while (level < line.length() && line.charAt(level) == '=')
+        {
+            level += 1;
+        }
+
+        int trailing = 0;
+
+        while (trailing < line.length() - level &&
+                line.charAt(line.length() - 1 - trailing) == '=')
+        {
+            trailing += 1;
+        }
+
+        if (level == 0 || trailing == 0)
+        {
+            return null;
+        }
+
+        return new Heading(Math.min(level, trailing),
+                line.substring(level, line.length() - trailing).trim());
+    }
+
+    // A link target like "Файл:...", "Категорія:..." or "en:apple", with a single-word
+    // prefix before a colon.
+    static boolean isNamespaced(String target)
+    {
+        int colon = target.indexOf(':');
+
+        return colon > 0 && target.lastIndexOf(' ', colon) == -1;
+    }
+
+    // Adds the [[...]] links in text[start, end) to the list.
+    static void findLinks(String text, int start, int end, List<Link> links)
+    {
+        int idx = text.indexOf("[[", start);
+
+        while (idx != -1 && idx < end)
+        {
+            int close = text.indexOf("]]", idx + 2);
+
+            if (close == -1 || close > end)
+            {
+                break;
+            }
+
+            String inner = text.substring(idx + 2, close);
+            int bar = inner.indexOf('|');
+            String target = (bar == -1 ? inner : inner.substring(0, bar)).trim();
+            String label = (bar == -1 ? target : inner.substring(inner.lastIndexOf('|') + 1))
+                    .trim();
+
+            if (!target.isEmpty())
+            {
+                links.add(new Link(target, label));
+            }
+
+            idx = text.indexOf("[[", close + 2);
+        }
+    }
+
+    static ArrayList<Heading> parseHeadings(String text, int start, int end)
+    {
+        ArrayList<Heading> headings = new ArrayList<>();
+        Heading current = new Heading(0, "");
+        int lineStart = start;
+
+        current.source = text;
+        current.bodyStart = start;
+
+        while (lineStart < end)
+        {
+            int lineEnd = text.indexOf('\n', lineStart);
+
+            if (lineEnd == -1 || lineEnd > end)
+            {
+                lineEnd = end;
+            }
+
+            String line = text.substring(lineStart, lineEnd).trim();
+            Heading heading = line.startsWith("=") ? parseHeading(line) : null;
+
+            if (heading != null)
+            {
+                current.bodyEnd = lineStart;
+
+                if (!current.isEmpty())
+                {
+                    headings.add(current);
+                }
+
+                current = heading;
+                current.source = text;
+                current.bodyStart = Math.min(lineEnd + 1, end);
+            }
+            else
+            {
+                if (line.startsWith("#") && !line.startsWith("#:") && !line.startsWith("#*"))
+                {
+                    current.senses.add(line.substring(1).trim());
+                }
+
+                findLinks(text, lineStart, lineEnd, current.links);
+            }
+
+            lineStart = lineEnd + 1;
+        }
+
+        current.bodyEnd = Math.max(current.bodyStart, end);
+
+        if (!current.isEmpty())
+        {
+            headings.add(current);
+        }
+
+        return headings;
+    }
+
+    public String getText()
+    {
+        return text;
+    }
+
+    public List<Section> getSections()
+    {
+        return Collections.unmodifiableList(sections);
+    }
+
+    // The language codes of the sections, in the order they appear.
+    public List<String> getLanguages()
+    {
+        ArrayList<String> languages = new ArrayList<>(sections.size());
+
+        for (Section section : sections)
+        {
+            languages.add(section.language);
+        }
+
+        return languages;
+    }
+
+    // The first section in the given language, or null if there's none.
+    public Section getSection(String language)
+    {
+        for (Section section : sections)
+        {
+            if (section.language.equals(language))
+            {
+                return section;
+            }
+        }
+
+        return null;
+    }
+
+    // A rough count of the memory the entry holds, for WikiEntryCache's budget.
+    long estimatedSize()
+    {
+        return 2L * text.length();
+    }
+}
@@ -0,0 +1,75 @@
+package com.mandysoftware.wordutil;
+
+import java.util.ArrayList;
+
+// Keeps recently parsed definitions (see WikiEntry) so that showing the same entry again,
+// e.g. going back to it, reuses the sections that were already parsed.
+//
+// Entries are keyed by dictionary name and word, and the cache is bounded by the rough
+// memory size of the entries it holds; see SizedLruCache.
+public class WikiEntryCache extends SizedLruCache<String, WikiEntry>
+{
+    // Definitions are up to a few dozen kB of text, so this holds a good few screens' worth.
+    public static final long DEFAULT_CAPACITY = 2 * 1024 * 1024;
+
+    public WikiEntryCache(long capacityBytes)
+    {
+        super(capacityBytes);
+    }
+
+    public WikiEntryCache()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    @Override
+    protected long sizeOf(WikiEntry entry)
+    {
+        return entry.estimatedSize();
+    }
+
+    static String key(String dictionaryName, String word)
+    {
+        return dictionaryName + '\n' + word;
+    }
+
+    public WikiEntry get(String dictionaryName, String word)
+    {
+        return get(key(dictionaryName, word));
+    }
+
+    public void put(String dictionaryName, String word, WikiEntry entry)
+    {
+        put(key(dictionaryName, word), entry);
+    }
+
+    // The parsed entry for the definition, from the cache if it's there. The definition
+    // is only used when the entry isn't cached yet.
+    public WikiEntry parse(String dictionaryName, String word, String definition)
+    {
+        WikiEntry entry = get(dictionaryName, word);
+
+        if (entry == null || !entry.text.equals(definition))
+        {
+            entry = new WikiEntry(definition);
+
+            put(dictionaryName, word, entry);
+        }
+
+        return entry;
+    }
+
+    // Drops the entries of a dictionary, e.g. when it's deleted or updated.
+    public synchronized void removeDictionary(String dictionaryName)
+    {
+        String prefix = key(dictionaryName, "");
+
+        for (String key : new ArrayList<>(values.keySet()))
+        {
+            if (key.startsWith(prefix))
+            {
+                remove(key);
+            }
+        }
+    }
+}
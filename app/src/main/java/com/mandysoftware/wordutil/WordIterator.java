@@ -0,0 +1,89 @@
+package com.mandysoftware.wordutil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.DataFormatException;
+
+// Iterates over every headword in word list order, with the chunks ahead of the current
+// one being decoded in the background (see ChunkPrefetcher).
+//
+// Iterator can't throw checked exceptions, so a read error comes out of hasNext() or next()
+// as an IllegalStateException with the original exception as its cause.
+// Close the iterator if you stop before the end, so the chunks still in flight are dropped.
+public class WordIterator implements Iterator<String>, Closeable
+{
+    final ChunkPrefetcher prefetcher;
+
+    List<String> words = null;
+    int index = 0;
+    boolean finished = false;
+
+    public WordIterator(IdxReader reader, int window)
+    {
+        prefetcher = new ChunkPrefetcher(reader, true, window);
+    }
+
+    public WordIterator(IdxReader reader)
+    {
+        prefetcher = new ChunkPrefetcher(reader, true);
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while (!finished && (words == null || index >= words.size()))
+        {
+            ChunkPrefetcher.Chunk chunk;
+
+            try
+            {
+                chunk = prefetcher.next();
+            }
+            catch (IOException|DataFormatException err)
+            {
+                close();
+
+                throw new IllegalStateException("Could not read the word list.", err);
+            }
+
+            if (chunk == null)
+            {
+                finished = true;
+                words = null;
+            }
+            else
+            {
+                words = chunk.words;
+                index = 0;
+            }
+        }
+
+        return !finished;
+    }
+
+    @Override
+    public String next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+
+        String word = words.get(index);
+
+        index += 1;
+
+        return word;
+    }
+
+    @Override
+    public void close()
+    {
+        prefetcher.close();
+        finished = true;
+        words = null;
+    }
+}
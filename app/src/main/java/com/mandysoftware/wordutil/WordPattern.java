@@ -0,0 +1,156 @@
+package com.mandysoftware.wordutil;
+
+// A crossword-style pattern: `?` stands for exactly one character and `*` for any run of
+// characters (including none). Everything else has to match literally, but case-insensitively
+// by code point, like Utf8.Prefix.
+//
+// Patterns are matched straight against the UTF-8 bytes of the inflated chunks.
+public class WordPattern
+{
+    public static final char ANY_CHARACTER = '?';
+    public static final char ANY_SEQUENCE = '*';
+
+    // How the wildcards are stored among the (non-negative) code points.
+    static final int TOKEN_ANY_CHARACTER = -1;
+    static final int TOKEN_ANY_SEQUENCE = -2;
+
+    final String text;
+    final int [] tokens;
+    final String literalPrefix;
+
+    public WordPattern(String pattern)
+    {
+        text = pattern;
+
+        int [] codePoints = Utf8.foldedCodePoints(pattern);
+        int [] compiled = new int[codePoints.length];
+        int n = 0;
+        int prefixEnd = -1;
+
+        for (int i = 0, idx = 0; i < codePoints.length; i += 1)
+        {
+            int codePoint = codePoints[i];
+            int token = codePoint;
+
+            if (codePoint == ANY_CHARACTER)
+            {
+                token = TOKEN_ANY_CHARACTER;
+            }
+            else if (codePoint == ANY_SEQUENCE)
+            {
+                token = TOKEN_ANY_SEQUENCE;
+            }
+
+            if (token < 0 && prefixEnd == -1)
+            {
+                prefixEnd = idx;
+            }
+
+            idx += Character.charCount(pattern.codePointAt(idx));
+
+            // "**" means the same as "*".
+            if (token == TOKEN_ANY_SEQUENCE && n > 0 && compiled[n - 1] == TOKEN_ANY_SEQUENCE)
+            {
+                continue;
+            }
+
+            compiled[n] = token;
+            n += 1;
+        }
+
+        tokens = new int[n];
+        System.arraycopy(compiled, 0, tokens, 0, n);
+        literalPrefix = prefixEnd == -1 ? pattern : pattern.substring(0, prefixEnd);
+    }
+
+    public String getText()
+    {
+        return text;
+    }
+
+    // Everything before the first wildcard. Every matching word starts with it,
+    // so it narrows down the chunks that need to be looked at.
+    public String getLiteralPrefix()
+    {
+        return literalPrefix;
+    }
+
+    public boolean hasWildcards()
+    {
+        return literalPrefix.length() < text.length();
+    }
+
+    // Does the whole word in buf[start, end) match the pattern?
+    //
+    // This is the usual greedy glob match: when a literal doesn't match, we go back to
+    // the last `*` and let it swallow one more character. It never backtracks further
+    // than that, so it's linear in the word length times the number of `*`s at worst.
+    public boolean matches(byte [] buf, int start, int end)
+    {
+        int token = 0;
+        int idx = start;
+        int starToken = -1;
+        int starIdx = start;
+
+        while (idx < end)
+        {
+            byte lead = buf[idx];
+            int len = Utf8.sequenceLength(lead);
+
+            if (idx + len > end)
+            {
+                return false;
+            }
+
+            if (token < tokens.length && tokens[token] == TOKEN_ANY_SEQUENCE)
+            {
+                starToken = token;
+                starIdx = idx;
+                token += 1;
+                continue;
+            }
+
+            if (token < tokens.length &&
+                    (tokens[token] == TOKEN_ANY_CHARACTER || tokens[token] == foldedAt(buf, idx)))
+            {
+                token += 1;
+                idx += len;
+                continue;
+            }
+
+            if (starToken == -1)
+            {
+                return false;
+            }
+
+            token = starToken + 1;
+            starIdx += Utf8.sequenceLength(buf[starIdx]);
+            idx = starIdx;
+        }
+
+        while (token < tokens.length && tokens[token] == TOKEN_ANY_SEQUENCE)
+        {
+            token += 1;
+        }
+
+        return token == tokens.length;
+    }
+
+    static int foldedAt(byte [] buf, int idx)
+    {
+        int ch = buf[idx];
+
+        // Plain ASCII doesn't need decoding.
+        if (ch >= 0)
+        {
+            if (ch >= 'A' && ch <= 'Z')
+            {
+                ch += 'a' - 'A';
+            }
+
+            return ch;
+        }
+
+        return Character.toLowerCase(Utf8.codePointAt(buf, idx));
+    }
+}
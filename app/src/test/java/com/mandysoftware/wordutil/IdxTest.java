@@ -5,7 +5,17 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.DataFormatException;
 
 public class IdxTest {
@@ -17,12 +27,18 @@ public class IdxTest {
         reader.close();
 
         Assertions.assertEquals(9, reader.entries.size());
-        Assertions.assertEquals(684765649, reader.entries.get(0).key_a);
-        Assertions.assertEquals(3501314229L, reader.entries.get(0).key_b);
-        Assertions.assertEquals(0, reader.entries.get(0).value);
-        Assertions.assertEquals(3501314229L, reader.entries.get(1).key_a);
-        Assertions.assertEquals(3501510846L, reader.entries.get(1).key_b);
-        Assertions.assertEquals(66570, reader.entries.get(1).value);
+        Assertions.assertEquals(684765649, reader.entries.key_a[0]);
+        Assertions.assertEquals(3501314229L, reader.entries.key_b[0]);
+        Assertions.assertEquals(0, reader.entries.value[0]);
+        Assertions.assertEquals(3501314229L, reader.entries.key_a[1]);
+        Assertions.assertEquals(3501510846L, reader.entries.key_b[1]);
+        Assertions.assertEquals(66570, reader.entries.value[1]);
+
+        // The cumulative counts are precomputed for ordinal lookups.
+        Assertions.assertEquals(0, reader.entries.cumulative[0]);
+        Assertions.assertEquals(15212, reader.entries.cumulative[1]);
+        Assertions.assertEquals(74126, reader.entries.totalCount());
+        Assertions.assertEquals(74126, reader.countWords());
     }
 
     @Test
@@ -122,6 +138,841 @@ public class IdxTest {
 
         Assertions.assertEquals("\uD83D\uDF7F", lastWord);
 
+        // Ordinal lookups on either side of a chunk boundary.
+        Assertions.assertEquals(0, reader.findIndexBounds(15211).bound_a);
+        Assertions.assertEquals(1, reader.findIndexBounds(15212).bound_a);
+        Assertions.assertEquals(15212, reader.findIndexBounds(15212).cumulative);
+        Assertions.assertEquals(8, reader.findIndexBounds(74125).bound_a);
+        Assertions.assertEquals(-1, reader.findIndexBounds(74126).bound_a);
+
+        Assertions.assertEquals("безхитрісний", reader.readWord(15211));
+        Assertions.assertEquals("безхитрісно", reader.readWord(15212));
+
+        reader.close();
+    }
+
+    @Test
+    void testChunkCache() throws IOException, DataFormatException
+    {
+        File inputFile = new File("src/test/resources/uk.idx");
+        IdxReader reader = new IdxReader(inputFile);
+        BlockCache cache = reader.getChunkCache();
+
+        // Typing out a word one letter at a time keeps hitting the same chunk.
+        reader.suggest("ко");
+        reader.suggest("кор");
+        reader.suggest("коро");
+        List<String> suggestions = reader.suggest("Коров");
+
+        Assertions.assertEquals("коров'як", suggestions.get(0));
+        Assertions.assertEquals(1, cache.getMisses());
+        Assertions.assertEquals(3, cache.getHits());
+
+        // With a budget that only fits a single chunk, alternating between two chunks
+        // evicts the other one each time.
+        reader.setChunkCacheSize(250 * 1024);
+        cache.resetStats();
+
+        reader.suggest("безхитріс");
+        reader.suggest("Коров");
+        reader.suggest("(бути)");
+
+        Assertions.assertEquals(1, cache.getBlockCount());
+        Assertions.assertTrue(cache.getSize() <= cache.getCapacity());
+        Assertions.assertTrue(cache.getEvictions() > 0);
+
+        // A zero budget disables the cache, and the results stay the same.
+        reader.setChunkCacheSize(0);
+
+        suggestions = reader.suggest("Коров");
+
+        Assertions.assertEquals(0, cache.getBlockCount());
+        Assertions.assertEquals(10, suggestions.size());
+        Assertions.assertEquals("коров’як", suggestions.get(9));
+
+        reader.close();
+    }
+
+    @Test
+    void testMemoryMapped() throws IOException, DataFormatException
+    {
+        File inputFile = new File("src/test/resources/uk.idx");
+        IdxReader reader = new IdxReader(inputFile, true);
+
+        Assertions.assertTrue(reader.isMemoryMapped());
+        Assertions.assertEquals(9, reader.entries.size());
+
+        // The mapped path must give exactly the same results as the stream path.
+        List<String> suggestions = reader.suggest("безхитріс");
+
+        Assertions.assertEquals(2, suggestions.size());
+        Assertions.assertEquals("безхитрісний", suggestions.get(0));
+        Assertions.assertEquals("безхитрісно", suggestions.get(1));
+
+        Assertions.assertEquals("(бути) в своєму репертуарі", reader.firstWord());
+        Assertions.assertEquals("\uD83D\uDF7F", reader.lastWord());
+
+        reader.close();
+    }
+
+    @Test
+    void testSuggestSession() throws IOException, DataFormatException
+    {
+        File inputFile = new File("src/test/resources/uk.idx");
+        IdxReader reader = new IdxReader(inputFile);
+        SuggestSession session = reader.newSuggestSession();
+
+        // Type a word out, delete back past a chunk boundary, type something else,
+        // and check every step against a from-scratch suggest().
+        String [] typed = new String [] {
+                "к", "ко", "кор", "Коро", "Коров", "коровай", "коровайн", "коровайнx",
+                "коровайн", "корова", "кор", "ко", "к", "", "б", "бе", "безхитріс",
+                "безхитріс", "безхитрісн", "безхитрісні", "zzz", "zzzz", "(", "(бути)"
+        };
+
+        for (String prefix : typed)
+        {
+            List<String> expected = reader.suggest(prefix);
+            List<String> actual = session.suggest(prefix);
+
+            Assertions.assertEquals(expected, actual, "Prefix <" + prefix + ">");
+        }
+
+        Assertions.assertEquals("(бути)", session.getPrefix());
+
+        // Typing a character only scans from where the previous prefix first matched.
+        session.reset();
+        session.suggest("коров");
+
+        SuggestSession.State state = session.states.get(session.states.size() - 1);
+
+        Assertions.assertEquals(4, state.firstMatch.chunk);
+        Assertions.assertTrue(state.firstMatch.offset > 0);
+
+        session.suggest("коровай");
+        SuggestSession.State narrowed = session.states.get(session.states.size() - 1);
+
+        Assertions.assertEquals(2, session.states.size());
+        Assertions.assertTrue(narrowed.firstMatch.compareTo(state.firstMatch) > 0);
+
+        reader.close();
+    }
+
+    @Test
+    void testSuggestCursor() throws IOException, DataFormatException
+    {
+        File inputFile = new File("src/test/resources/uk.idx");
+        IdxReader reader = new IdxReader(inputFile);
+
+        // Paging through everything must give the same words as one big suggest(),
+        // including across the chunk 0 / chunk 1 boundary.
+        List<String> expected = reader.suggest("без", 100000);
+        SuggestCursor cursor = reader.suggestCursor("без");
+        List<String> actual = new ArrayList<>();
+
+        while (cursor.hasMore())
+        {
+            List<String> page = cursor.nextPage(7);
+
+            Assertions.assertTrue(page.size() <= 7);
+
+            actual.addAll(page);
+        }
+
+        Assertions.assertTrue(expected.size() > 100);
+        Assertions.assertEquals(expected, actual);
+        Assertions.assertEquals(expected.size(), cursor.getReturnedCount());
+        Assertions.assertEquals(0, cursor.nextPage(7).size());
+
+        // A session continues right after the page it last returned.
+        SuggestSession session = reader.newSuggestSession();
+        List<String> firstPage = session.suggest("Коров", 3);
+        List<String> secondPage = session.suggestMore(3);
+
+        Assertions.assertEquals(reader.suggest("Коров", 3), firstPage);
+        Assertions.assertEquals(reader.suggest("Коров", 6).subList(3, 6), secondPage);
+
+        reader.close();
+    }
+
+    @Test
+    void testSuggestFuzzy() throws IOException, DataFormatException
+    {
+        File inputFile = new File("src/test/resources/uk.idx");
+        IdxReader reader = new IdxReader(inputFile);
+        List<String> suggestions;
+
+        // One substitution.
+        suggestions = reader.suggestFuzzy("карова", 1);
+
+        Assertions.assertEquals(1, suggestions.size());
+        Assertions.assertEquals("корова", suggestions.get(0));
+
+        // Closest first: "корова" and "коровай" are two edits away, and so is "Караван".
+        suggestions = reader.suggestFuzzy("кароваі", 2);
+
+        Assertions.assertEquals(3, suggestions.size());
+        Assertions.assertTrue(suggestions.contains("корова"));
+        Assertions.assertTrue(suggestions.contains("коровай"));
+
+        suggestions = reader.suggestFuzzy("korova", 1);
+
+        Assertions.assertEquals(0, suggestions.size());
+
+        // Exact matches come before the ones with a typo, case-insensitively.
+        suggestions = reader.suggestFuzzy("Apple", 1);
+
+        Assertions.assertEquals("apple", suggestions.get(0));
+
+        // Prefix mode compares with the start of each word, for queries still being typed.
+        suggestions = reader.suggestFuzzy("коравай", 1, true, 10);
+
+        Assertions.assertEquals(5, suggestions.size());
+        Assertions.assertEquals("коровай", suggestions.get(0));
+        Assertions.assertEquals("коровайниця", suggestions.get(4));
+
+        // Chunks whose key range can't be within the distance are skipped.
+        Levenshtein automaton = new Levenshtein("apple", 1);
+
+        Assertions.assertTrue(reader.canChunkMatch(automaton, 0, false));
+        Assertions.assertFalse(reader.canChunkMatch(automaton, 3, false));
+
+        // Words that short are within the distance of nearly everything.
+        Assertions.assertEquals(0, reader.suggestFuzzy("к", 1, true, 10).size());
+        Assertions.assertEquals(0, reader.suggestFuzzy("ко", 2).size());
+
+        // The trie walk over each chunk finds the same words as matching them one by one.
+        final ArrayList<String> words = new ArrayList<>();
+
+        reader.forEachWord((ordinal, word) -> words.add(word));
+
+        for (boolean prefixMode : new boolean [] {false, true})
+        {
+            for (String query : new String [] {"коравай", "кароваі", "Apple", "безхитр"})
+            {
+                Levenshtein expected = new Levenshtein(query, 2);
+                Levenshtein.SortedMatcher matcher = new Levenshtein.SortedMatcher(expected,
+                        prefixMode);
+                int [] rowA = expected.newRow();
+                int [] rowB = expected.newRow();
+
+                for (String word : words)
+                {
+                    byte [] bytes = word.getBytes(StandardCharsets.UTF_8);
+
+                    Assertions.assertEquals(
+                            expected.match(bytes, 0, bytes.length, prefixMode, rowA, rowB),
+                            matcher.match(bytes, 0, bytes.length), word);
+                }
+            }
+        }
+
+        // With small chunks, the keys alone rule out a good part of the word list,
+        // even though they only hold the first two letters of a Cyrillic word.
+        File smallChunks = File.createTempFile("small", ".idx");
+
+        smallChunks.deleteOnExit();
+        IdxWriter.write(smallChunks, words, 4096);
+
+        IdxReader smallReader = new IdxReader(smallChunks);
+        Levenshtein cyrillic = new Levenshtein("корова", 1);
+        int pruned = 0;
+
+        for (int idxChunk = 0; idxChunk < smallReader.entries.size(); idxChunk += 1)
+        {
+            if (!smallReader.canChunkMatch(cyrillic, idxChunk, true))
+            {
+                pruned += 1;
+            }
+        }
+
+        Assertions.assertTrue(pruned > smallReader.entries.size() / 5);
+        Assertions.assertEquals(reader.suggestFuzzy("корова", 1, true, 10),
+                smallReader.suggestFuzzy("корова", 1, true, 10));
+
+        smallReader.close();
+        reader.close();
+    }
+
+    @Test
+    void testSuggestFuzzyPrefixPruning() throws IOException, DataFormatException
+    {
+        // In prefix mode, "a" is already within one edit of "ab", so every word starting
+        // with "a" matches, including the ones in a chunk whose words all start with "axyz".
+        ArrayList<String> words = new ArrayList<>();
+
+        for (char letter = 'a'; letter <= 'm'; letter += 1)
+        {
+            for (int i = 0; i < 100; i += 1)
+            {
+                words.add("axyz" + letter + i);
+            }
+        }
+
+        words.add("aa");
+        words.add("zz");
+
+        File inputFile = File.createTempFile("prefix", ".idx");
+
+        inputFile.deleteOnExit();
+        IdxWriter.write(inputFile, words, 1024);
+
+        IdxReader reader = new IdxReader(inputFile);
+        Levenshtein automaton = new Levenshtein("ab", 1);
+        int axyzChunks = 0;
+
+        for (int idxChunk = 0; idxChunk < reader.entries.size(); idxChunk += 1)
+        {
+            if (reader.commonKeyPrefix(idxChunk).length == 4)
+            {
+                axyzChunks += 1;
+
+                Assertions.assertTrue(reader.canChunkMatch(automaton, idxChunk, true));
+                Assertions.assertFalse(reader.canChunkMatch(automaton, idxChunk, false));
+            }
+        }
+
+        Assertions.assertTrue(axyzChunks > 0);
+
+        // "zz" is the only word that doesn't start with "a".
+        List<String> suggestions = reader.suggestFuzzy("ab", 1, true, words.size());
+
+        Assertions.assertEquals(words.size() - 1, suggestions.size());
+        Assertions.assertTrue(suggestions.contains("axyzm99"));
+        Assertions.assertFalse(suggestions.contains("zz"));
+
+        reader.close();
+    }
+
+    // Sidecar indexes get written next to the .idx file,
+    // so tests that build them work on a copy in a temporary directory.
+    static File copyToTempDir(String name) throws IOException
+    {
+        File tempDir = Files.createTempDirectory("wordutil").toFile();
+        File copy = new File(tempDir, name);
+
+        Files.copy(new File("src/test/resources/" + name).toPath(), copy.toPath());
+        tempDir.deleteOnExit();
+        copy.deleteOnExit();
+
+        return copy;
+    }
+
+    @Test
+    void testNormalizedIndex() throws IOException, DataFormatException
+    {
+        Assertions.assertEquals("cafe", NormalizedIndex.fold("Café"));
+        Assertions.assertEquals("коров'як", NormalizedIndex.fold("Коров’як"));
+        Assertions.assertEquals("коров'як", NormalizedIndex.fold("коровʼяк"));
+
+        File inputFile = copyToTempDir("uk.idx");
+        IdxReader reader = new IdxReader(inputFile);
+        File sidecarFile = Sidecar.fileFor(inputFile, NormalizedIndex.SIDECAR_KIND);
+
+        sidecarFile.deleteOnExit();
+
+        // Neither of these builds it.
+        Sidecar.Build cancelled = new Sidecar.Build();
+        IdxReader source = reader;
+
+        cancelled.cancel();
+
+        Assertions.assertNull(reader.openNormalizedIndexIfBuilt());
+        Assertions.assertThrows(InterruptedIOException.class,
+                () -> NormalizedIndex.build(source, sidecarFile, cancelled));
+        Assertions.assertFalse(sidecarFile.exists());
+
+        NormalizedIndex index = reader.openNormalizedIndex();
+
+        Assertions.assertTrue(Sidecar.isFresh(sidecarFile, inputFile));
+        Assertions.assertSame(index, reader.openNormalizedIndexIfBuilt());
+
+        // Both apostrophe variants are found whichever one is typed.
+        List<String> suggestions = reader.suggestNormalized("КОРОВ’Я");
+
+        Assertions.assertEquals(2, suggestions.size());
+        Assertions.assertTrue(suggestions.contains("коров'як"));
+        Assertions.assertTrue(suggestions.contains("коров’як"));
+
+        List<String> variants = index.resolve("коров'як");
+
+        Assertions.assertEquals(2, variants.size());
+        Assertions.assertTrue(variants.contains("коров’як"));
+
+        Assertions.assertEquals(0, index.resolve("коров").size());
+
+        reader.close();
+
+        // Opening it again reuses the sidecar instead of building it again.
+        long builtAt = sidecarFile.lastModified();
+
+        reader = new IdxReader(inputFile);
+        reader.openNormalizedIndex();
+
+        Assertions.assertEquals(builtAt, sidecarFile.lastModified());
+        Assertions.assertEquals(1, reader.suggestNormalized("коровай", 1).size());
+
+        reader.close();
+    }
+
+    @Test
+    void testSuggestContaining() throws IOException, DataFormatException
+    {
+        File inputFile = copyToTempDir("uk.idx");
+        IdxReader reader = new IdxReader(inputFile);
+
+        Sidecar.fileFor(inputFile, TrigramIndex.SIDECAR_KIND).deleteOnExit();
+
+        Assertions.assertNull(reader.openTrigramIndexIfBuilt());
+
+        // The same words, in the same order, as checking every word in the list.
+        String [] substrings = new String [] {"оров", "ОВАЙ", "ий", "xyzzy", "ів'я"};
+
+        for (String substring : substrings)
+        {
+            ArrayList<String> expected = new ArrayList<>();
+            String folded = NormalizedIndex.fold(substring);
+
+            for (int idxChunk = 0; idxChunk < reader.entries.size(); idxChunk += 1)
+            {
+                for (String word : reader.readChunkWords(idxChunk))
+                {
+                    if (expected.size() < 20 && NormalizedIndex.fold(word).contains(folded))
+                    {
+                        expected.add(word);
+                    }
+                }
+            }
+
+            Assertions.assertEquals(expected, reader.suggestContaining(substring, 20));
+        }
+
+        List<String> suggestions = reader.suggestContaining("коровай", 10);
+
+        Assertions.assertTrue(suggestions.contains("коровай"));
+        Assertions.assertEquals(0, reader.suggestContaining("оров", 0).size());
+        Assertions.assertSame(reader.openTrigramIndex(), reader.openTrigramIndexIfBuilt());
+
+        reader.close();
+    }
+
+    @Test
+    void testSuggestPattern() throws IOException, DataFormatException
+    {
+        Assertions.assertEquals("к", new WordPattern("к?р?ва").getLiteralPrefix());
+        Assertions.assertEquals("", new WordPattern("*ання").getLiteralPrefix());
+        Assertions.assertFalse(new WordPattern("корова").hasWildcards());
+
+        IdxReader reader = new IdxReader(new File("src/test/resources/uk.idx"));
+
+        // The same words, in the same order, as checking every word in the list.
+        String [] patterns = new String [] {"к?р?ва", "*ання", "К*в*й", "?", "коровай", "*q*q*"};
+
+        for (String text : patterns)
+        {
+            WordPattern pattern = new WordPattern(text);
+            ArrayList<String> expected = new ArrayList<>();
+
+            for (int idxChunk = 0; idxChunk < reader.entries.size(); idxChunk += 1)
+            {
+                for (String word : reader.readChunkWords(idxChunk))
+                {
+                    byte [] bytes = word.getBytes(StandardCharsets.UTF_8);
+
+                    if (expected.size() < 20 && pattern.matches(bytes, 0, bytes.length))
+                    {
+                        expected.add(word);
+                    }
+                }
+            }
+
+            Assertions.assertEquals(expected, reader.suggestPattern(text, 20));
+        }
+
+        List<String> suggestions = reader.suggestPattern("Коро?ай");
+
+        Assertions.assertEquals(2, suggestions.size());
+        Assertions.assertEquals("коровай", suggestions.get(0));
+        Assertions.assertEquals("коротай", suggestions.get(1));
+
+        // A page of common matches is found without decoding the whole word list.
+        reader.getChunkCache().clear();
+        reader.getChunkCache().resetStats();
+
+        Assertions.assertEquals(5, reader.suggestPattern("*а", 5).size());
+        Assertions.assertTrue(reader.getChunkCache().getMisses() <= Parallel.getParallelism());
+
+        reader.close();
+    }
+
+    @Test
+    void testSuggestBySuffix() throws IOException, DataFormatException
+    {
+        Assertions.assertEquals("аворок", SuffixIndex.reverse("корова"));
+        Assertions.assertEquals("🝿a", SuffixIndex.reverse("a🝿"));
+
+        File inputFile = copyToTempDir("uk.idx");
+        IdxReader reader = new IdxReader(inputFile);
+
+        Sidecar.fileFor(inputFile, SuffixIndex.SIDECAR_KIND).deleteOnExit();
+
+        Assertions.assertNull(reader.openSuffixIndexIfBuilt());
+
+        // Every word that ends with the suffix, and nothing else.
+        ArrayList<String> expected = new ArrayList<>();
+
+        for (int idxChunk = 0; idxChunk < reader.entries.size(); idxChunk += 1)
+        {
+            for (String word : reader.readChunkWords(idxChunk))
+            {
+                if (word.toLowerCase().endsWith("ування"))
+                {
+                    expected.add(word);
+                }
+            }
+        }
+
+        List<String> suggestions = reader.suggestBySuffix("УВАННЯ", expected.size() + 10);
+
+        Assertions.assertTrue(expected.size() > 10);
+        Assertions.assertEquals(expected.size(), suggestions.size());
+        Assertions.assertTrue(suggestions.containsAll(expected));
+
+        // A longer ending narrows it right down.
+        suggestions = reader.suggestBySuffix("оровай", 10);
+
+        Assertions.assertTrue(suggestions.contains("коровай"));
+
+        Assertions.assertEquals(0, reader.suggestBySuffix("жжжжжжж").size());
+        Assertions.assertSame(reader.openSuffixIndex(), reader.openSuffixIndexIfBuilt());
+
+        reader.close();
+    }
+
+    @Test
+    void testRandomWords() throws IOException, DataFormatException
+    {
+        IdxReader reader = new IdxReader(new File("src/test/resources/uk.idx"));
+        BlockCache cache = reader.getChunkCache();
+
+        // However many words are drawn, each chunk is decoded at most once.
+        reader.setChunkCacheSize(0);
+
+        List<String> words = reader.randomWords(50, 42);
+
+        Assertions.assertEquals(50, words.size());
+        Assertions.assertTrue(cache.getMisses() <= reader.entries.size());
+        Assertions.assertEquals(50, new HashSet<>(words).size());
+
+        for (String word : words)
+        {
+            Assertions.assertTrue(reader.suggest(word).contains(word));
+        }
+
+        // Reproducible for a given seed, whether or not the chunks are decoded in parallel.
+        Assertions.assertEquals(words, reader.randomWords(50, 42, true));
+        Assertions.assertNotEquals(words, reader.randomWords(50, 43));
+
+        Assertions.assertEquals(0, reader.randomWords(0, 42).size());
+
+        // Asking for every word gives each of them once.
+        List<String> all = reader.randomWords(reader.countWords() + 1, 42, true);
+
+        Assertions.assertEquals(reader.countWords(), all.size());
+        Assertions.assertEquals(reader.countWords(), new HashSet<>(all).size());
+
+        reader.close();
+    }
+
+    @Test
+    void testForEachWord() throws IOException, DataFormatException
+    {
+        IdxReader reader = new IdxReader(new File("src/test/resources/uk.idx"));
+        final ArrayList<String> ordered = new ArrayList<>();
+
+        Assertions.assertTrue(reader.forEachWord((ordinal, word) -> {
+            Assertions.assertEquals(ordered.size(), ordinal);
+            ordered.add(word);
+
+            return true;
+        }));
+
+        // A full pass doesn't go through (and flush) the chunk cache.
+        Assertions.assertEquals(0, reader.getChunkCache().getBlockCount());
+
+        Assertions.assertEquals(reader.countWords(), ordered.size());
+        Assertions.assertEquals(reader.firstWord(), ordered.get(0));
+        Assertions.assertEquals("безхитрісно", ordered.get(15212));
+        Assertions.assertEquals(reader.lastWord(), ordered.get(ordered.size() - 1));
+
+        // Unordered mode sees the same words, each with its own ordinal.
+        final String [] unordered = new String[ordered.size()];
+
+        reader.forEachWord((ordinal, word) -> {
+            unordered[(int) ordinal] = word;
+
+            return true;
+        }, false);
+
+        Assertions.assertEquals(ordered, Arrays.asList(unordered));
+
+        // Stopping early.
+        final int [] visited = new int[1];
+
+        Assertions.assertFalse(reader.forEachWord((ordinal, word) -> {
+            visited[0] += 1;
+
+            return ordinal < 99;
+        }, false));
+        Assertions.assertEquals(100, visited[0]);
+
+        // The iterator walks the same list.
+        WordIterator iterator = reader.iterateWords();
+        int count = 0;
+
+        while (iterator.hasNext())
+        {
+            Assertions.assertEquals(ordered.get(count), iterator.next());
+            count += 1;
+        }
+
+        Assertions.assertEquals(ordered.size(), count);
+
+        iterator = reader.iterateWords();
+
+        Assertions.assertEquals(ordered.get(0), iterator.next());
+
+        iterator.close();
+
+        Assertions.assertFalse(iterator.hasNext());
+
+        reader.close();
+    }
+
+    @Test
+    void testCountPrefix() throws IOException, DataFormatException
+    {
+        IdxReader reader = new IdxReader(new File("src/test/resources/uk.idx"));
+        BlockCache cache = reader.getChunkCache();
+        String [] prefixes = new String [] {"п", "по", "Коро", "безхитріс", "(бути)", "a",
+                "🝿", "ashglakshgljkashfklgjaskldhgklasdjlk", "İ", "İn"};
+
+        for (String prefix : prefixes)
+        {
+            Utf8.Prefix matcher = new Utf8.Prefix(prefix);
+            int expected = 0;
+
+            for (int idxChunk = 0; idxChunk < reader.entries.size(); idxChunk += 1)
+            {
+                expected += reader.countChunkMatches(matcher, idxChunk);
+            }
+
+            // At most the two boundary chunks are inflated.
+            reader.setChunkCacheSize(0);
+            cache.resetStats();
+
+            Assertions.assertEquals(expected, reader.countPrefix(prefix));
+            Assertions.assertTrue(cache.getMisses() <= 2);
+
+            reader.setChunkCacheSize(IdxReader.DEFAULT_CHUNK_CACHE_SIZE);
+        }
+
+        Assertions.assertEquals(2, reader.countPrefix("безхитріс"));
+        Assertions.assertEquals(reader.countWords(), reader.countPrefix(""));
+
+        // With small chunks, most of the matches are in chunks strictly between the bounds,
+        // and those are counted without being inflated.
+        File smallChunks = File.createTempFile("small", ".idx");
+        final ArrayList<String> words = new ArrayList<>();
+
+        smallChunks.deleteOnExit();
+        reader.forEachWord((ordinal, word) -> words.add(word));
+        IdxWriter.write(smallChunks, words, 4096);
+
+        IdxReader smallReader = new IdxReader(smallChunks);
+
+        smallReader.setChunkCacheSize(0);
+
+        Assertions.assertTrue(smallReader.entries.size() > 100);
+        Assertions.assertEquals(reader.countPrefix("п"), smallReader.countPrefix("п"));
+        Assertions.assertEquals(reader.countPrefix("по"), smallReader.countPrefix("по"));
+        Assertions.assertTrue(smallReader.getChunkCache().getMisses() <= 4);
+
+        // Longer prefixes get no tighter key bounds than their first two letters, which span
+        // many chunks, but still only the chunks where the matches start and end are inflated.
+        for (String prefix : new String [] {"коро", "пере", "безхитр"})
+        {
+            smallReader.getChunkCache().resetStats();
+
+            Assertions.assertEquals(reader.countPrefix(prefix), smallReader.countPrefix(prefix));
+            Assertions.assertTrue(smallReader.getChunkCache().getMisses() <= 2, prefix);
+        }
+
+        // 'İ' lower-cases to two characters as a string, but the matcher folds it to 'i'.
+        Assertions.assertEquals(smallReader.countPrefix("i"), smallReader.countPrefix("İ"));
+        Assertions.assertEquals(smallReader.countPrefix("in"), smallReader.countPrefix("İn"));
+
+        smallReader.close();
+        reader.close();
+    }
+
+    @Test
+    void testBrowseCursor() throws IOException, DataFormatException
+    {
+        IdxReader reader = new IdxReader(new File("src/test/resources/uk.idx"));
+        BrowseCursor cursor = reader.browse("коровай");
+
+        Assertions.assertEquals("коровай", cursor.current());
+        Assertions.assertEquals(Arrays.asList("коров'як", "корова"), cursor.before(2));
+        Assertions.assertEquals(Arrays.asList("коровайка", "Коровайна"), cursor.after(2));
+        Assertions.assertEquals(5, cursor.around(2).size());
+
+        // A word that isn't in the list lands where it would be.
+        Assertions.assertEquals("коровайка", reader.browse("коровайк").current());
+
+        // Across a chunk boundary, in both directions, decoding each chunk once.
+        reader.setChunkCacheSize(0);
+        cursor = reader.browse("безхитрісний");
+
+        Assertions.assertEquals(15211, cursor.getPosition());
+        Assertions.assertEquals(Arrays.asList("безхитрісно"), cursor.after(1));
+
+        BlockCache cache = reader.getChunkCache();
+        long misses = cache.getMisses();
+
+        for (int i = 0; i < 5; i += 1)
+        {
+            Assertions.assertEquals(3, cursor.scroll(3));
+            Assertions.assertEquals(7, cursor.around(3).size());
+            Assertions.assertEquals(-3, cursor.scroll(-3));
+            Assertions.assertEquals(7, cursor.around(3).size());
+        }
+
+        String before = cursor.before(2).get(0);
+
+        Assertions.assertEquals(misses, cache.getMisses());
+        Assertions.assertEquals(reader.readWord(15209), before);
+
+        // The ends of the list.
+        cursor = reader.browse(0);
+
+        Assertions.assertEquals(reader.firstWord(), cursor.current());
+        Assertions.assertEquals(0, cursor.before(5).size());
+        Assertions.assertEquals(0, cursor.scroll(-10));
+
+        cursor = reader.browse("🝿");
+
+        Assertions.assertEquals(reader.countWords() - 1, cursor.getPosition());
+        Assertions.assertEquals(0, cursor.after(5).size());
+        Assertions.assertEquals(reader.countWords() - 1, reader.browse("🝿🝿")
+                .getPosition());
+
+        reader.close();
+    }
+
+    @Test
+    void testConcurrentReads() throws Exception
+    {
+        File inputFile = new File("src/test/resources/uk.idx");
+
+        for (boolean memoryMapped : new boolean [] {false, true})
+        {
+            for (long cacheSize : new long [] {0, IdxReader.DEFAULT_CHUNK_CACHE_SIZE})
+            {
+                final IdxReader reader = new IdxReader(inputFile, memoryMapped);
+
+                reader.setChunkCacheSize(cacheSize);
+
+                // Words spread over every chunk, so the threads keep missing each other's
+                // cached chunks and reading from the file at the same time.
+                final int queryCount = 16;
+                final String [] prefixes = new String [queryCount];
+                final int [] ordinals = new int [queryCount];
+                final ArrayList<List<String>> expectedSuggestions = new ArrayList<>();
+                final int [] expectedCounts = new int [queryCount];
+                final String [] expectedWords = new String [queryCount];
+
+                for (int i = 0; i < queryCount; i += 1)
+                {
+                    ordinals[i] = (int) ((long) i * (reader.countWords() - 1) / (queryCount - 1));
+                    expectedWords[i] = reader.readWord(ordinals[i]);
+
+                    String word = expectedWords[i];
+
+                    prefixes[i] = word.substring(0, Math.min(word.length(), 3));
+                    expectedSuggestions.add(reader.suggest(prefixes[i]));
+                    expectedCounts[i] = reader.countPrefix(prefixes[i]);
+                }
+
+                ExecutorService executor = Executors.newFixedThreadPool(8);
+                ArrayList<Future<Void>> futures = new ArrayList<>();
+
+                for (int t = 0; t < 16; t += 1)
+                {
+                    final int offset = t;
+
+                    futures.add(executor.submit(() -> {
+                        for (int n = 0; n < queryCount; n += 1)
+                        {
+                            int i = (n * 5 + offset) % queryCount;
+
+                            Assertions.assertEquals(expectedSuggestions.get(i),
+                                    reader.suggest(prefixes[i]));
+                            Assertions.assertEquals(expectedCounts[i],
+                                    reader.countPrefix(prefixes[i]));
+                            Assertions.assertEquals(expectedWords[i],
+                                    reader.readWord(ordinals[i]));
+                        }
+
+                        return null;
+                    }));
+                }
+
+                executor.shutdown();
+
+                // Rethrows the first failure from any of the threads.
+                for (Future<Void> future : futures)
+                {
+                    future.get();
+                }
+
+                reader.close();
+            }
+        }
+    }
+
+    static long allocatedBytes()
+    {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    void testSuggestAllocations() throws IOException, DataFormatException
+    {
+        File inputFile = new File("src/test/resources/uk.idx");
+        IdxReader reader = new IdxReader(inputFile);
+
+        // Warm up, so that the chunk is cached and we only measure the matching itself.
+        for (int i = 0; i < 20; i += 1)
+        {
+            reader.suggest("Коров");
+        }
+
+        int rounds = 20;
+        long before = allocatedBytes();
+
+        for (int i = 0; i < rounds; i += 1)
+        {
+            reader.suggest("Коров");
+        }
+
+        long perCall = (allocatedBytes() - before) / rounds;
+
+        // The matched chunk holds thousands of words, but only the ten matches
+        // should get turned into Strings.
+        Assertions.assertTrue(perCall < 16 * 1024, "Allocated " + perCall + " bytes per call.");
+
         reader.close();
     }
 
@@ -3,11 +3,31 @@ package com.mandysoftware.wordutil;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
 public class WapTest {
     @Test
@@ -73,6 +93,648 @@ public class WapTest {
         reader.close();
     }
 
+    @Test
+    void testBlockCache() throws IOException, DataFormatException
+    {
+        File inputFile = writeDictionary(sampleDefinitions());
+        WapReader reader = new WapReader(inputFile);
+        BlockCache cache = reader.getBlockCache();
+
+        // Looking up the same word again doesn't inflate its block again.
+        String first = reader.lookupWord("apple");
+        String second = reader.lookupWord("apple");
+
+        Assertions.assertEquals(first, second);
+        Assertions.assertEquals(1, cache.getMisses());
+        Assertions.assertEquals(1, cache.getHits());
+        Assertions.assertEquals(1, cache.getBlockCount());
+
+        // A zero budget disables the cache, and the results stay the same.
+        reader.setBlockCacheSize(0);
+
+        Assertions.assertEquals(0, cache.getBlockCount());
+        Assertions.assertEquals(first, reader.lookupWord("apple"));
+        Assertions.assertEquals(0, cache.getBlockCount());
+
+        reader.close();
+    }
+
+    @Test
+    void testLookupAllocations() throws IOException, DataFormatException
+    {
+        File inputFile = writeDictionary(sampleDefinitions());
+        WapReader reader = new WapReader(inputFile);
+        int entryLength = reader.lookupEntry("apple").length;
+
+        // Warm up, so the block is cached and the code is compiled.
+        for (int i = 0; i < 1000; i += 1)
+        {
+            reader.lookupEntry("apple");
+        }
+
+        int calls = 1000;
+        long before = IdxTest.allocatedBytes();
+
+        for (int i = 0; i < calls; i += 1)
+        {
+            reader.lookupEntry("apple");
+        }
+
+        long perCall = (IdxTest.allocatedBytes() - before) / calls;
+
+        // Besides the returned entry itself, only hashing the word for its bucket
+        // and encoding it as UTF-8 should allocate anything.
+        Assertions.assertTrue(perCall - entryLength < 512,
+                "Allocated " + perCall + " bytes per lookup.");
+
+        // The byte comparison agrees with String.compareTo(), including the characters
+        // on either side of the surrogates.
+        String [] words = new String [] {"a", "ab", "b", "я", "\uFFFD", "\uD83D\uDF7F"};
+
+        for (String a : words)
+        {
+            for (String b : words)
+            {
+                byte [] bytes = b.getBytes(StandardCharsets.UTF_8);
+
+                Assertions.assertEquals(Integer.signum(a.compareTo(b)), Integer.signum(
+                        WapReader.compareUtf8(a.getBytes(StandardCharsets.UTF_8), bytes,
+                                0, bytes.length)));
+            }
+        }
+
+        reader.close();
+    }
+
+    @Test
+    void testEntryBuffer() throws IOException, DataFormatException
+    {
+        File inputFile = writeDictionary(sampleDefinitions());
+        WapReader reader = new WapReader(inputFile);
+        byte [] entry = reader.lookupEntry("apple");
+        String text = reader.lookupWord("apple");
+
+        ByteBuffer buffer = reader.lookupEntryBuffer("apple");
+        byte [] bufferBytes = new byte[buffer.remaining()];
+
+        Assertions.assertTrue(buffer.isReadOnly());
+        buffer.get(bufferBytes);
+        Assertions.assertTrue(Arrays.equals(entry, bufferBytes));
+
+        // Reading the whole entry through the Reader gives the same text.
+        Reader entryReader = reader.openEntryReader("apple");
+        StringBuilder builder = new StringBuilder();
+        char [] chars = new char[7];
+        int nChars;
+
+        while ((nChars = entryReader.read(chars)) >= 0)
+        {
+            builder.append(chars, 0, nChars);
+        }
+
+        Assertions.assertEquals(text, builder.toString());
+
+        Assertions.assertEquals(text.substring(0, 10), reader.previewWord("apple", 10));
+        Assertions.assertEquals(text, reader.previewWord("apple", text.length()));
+        Assertions.assertEquals(text, reader.previewWord("apple", text.length() + 100));
+        Assertions.assertEquals("", reader.previewWord("apple", 0));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> reader.previewWord("apple", -1));
+
+        reader.close();
+    }
+
+    @Test
+    void testLookupWords() throws IOException, DataFormatException
+    {
+        File inputFile = writeDictionary(sampleDefinitions());
+        WapReader reader = new WapReader(inputFile);
+        String [] words = new String [] {"\uD83D\uDF7F", "apple", "aaslkghaslkdghkashdglkasghl",
+                "(бути) в своєму репертуарі", "apple"};
+
+        WapReader.BatchResult result = reader.lookupWords(Arrays.asList(words));
+
+        // In the order given, each word once.
+        Assertions.assertEquals(Arrays.asList("\uD83D\uDF7F", "apple",
+                "(бути) в своєму репертуарі"),
+                new ArrayList<>(result.getDefinitions().keySet()));
+        Assertions.assertEquals(Arrays.asList("aaslkghaslkdghkashdglkasghl"), result.getMisses());
+
+        for (String word : result.getDefinitions().keySet())
+        {
+            Assertions.assertEquals(reader.lookupWord(word), result.getDefinitions().get(word));
+        }
+
+        // Each bucket was inflated once.
+        HashSet<Integer> buckets = new HashSet<>();
+
+        for (String word : words)
+        {
+            if (reader.lookupIndex(word) != -1)
+            {
+                buckets.add(reader.lookupIndex(word));
+            }
+        }
+
+        Assertions.assertEquals(buckets.size(), reader.getBlockCache().getMisses());
+
+        Assertions.assertEquals(0, reader.lookupWords(new ArrayList<String>())
+                .getDefinitions().size());
+
+        reader.close();
+    }
+
+    @Test
+    void testRedirects() throws IOException, DataFormatException
+    {
+        Assertions.assertEquals("в своєму репертуарі",
+                RedirectTable.redirectTarget("#ПЕРЕНАПРАВЛЕННЯ [[в своєму репертуарі]]"));
+        Assertions.assertEquals("apple", RedirectTable.redirectTarget("#redirect: [[apple#Noun|x]]"));
+        Assertions.assertEquals(null, RedirectTable.redirectTarget("# [[apple]]"));
+        Assertions.assertEquals(null, RedirectTable.redirectTarget("#REDIRECT apple"));
+
+        // Chains are followed to the end, and loops are dropped.
+        HashMap<String, String> chains = new HashMap<>();
+
+        chains.put("a", "b");
+        chains.put("b", "c");
+        chains.put("x", "y");
+        chains.put("y", "x");
+
+        Assertions.assertEquals("c", RedirectTable.finalTarget(chains, "a"));
+        Assertions.assertEquals(null, RedirectTable.finalTarget(chains, "x"));
+
+        File inputFile = writeDictionary(sampleDefinitions());
+        WapReader reader = new WapReader(inputFile);
+        String source = "(бути) в своєму репертуарі";
+        String target = reader.lookupWord("в своєму репертуарі");
+        String loop = reader.lookupWord("петля2");
+
+        // Without the table, the redirect is followed one entry at a time.
+        Assertions.assertEquals(target, reader.lookupFollowingRedirects(source));
+        Assertions.assertEquals(target, reader.lookupFollowingRedirects("репертуар"));
+        Assertions.assertEquals(loop, reader.lookupFollowingRedirects("петля1"));
+        Assertions.assertEquals(reader.lookupWord("apple"),
+                reader.lookupFollowingRedirects("apple"));
+        Assertions.assertNull(reader.openRedirectTableIfBuilt());
+
+        // The batch lookup follows them the same way.
+        List<String> batchWords = Arrays.asList(source, "репертуар", "петля1", "apple");
+        WapReader.BatchResult batch = reader.lookupWordsFollowingRedirects(batchWords, null);
+
+        for (String word : batchWords)
+        {
+            Assertions.assertEquals(reader.lookupFollowingRedirects(word),
+                    batch.getDefinitions().get(word));
+        }
+
+        RedirectTable table = reader.openRedirectTable();
+        File sidecarFile = Sidecar.fileFor(inputFile, RedirectTable.SIDECAR_KIND);
+
+        sidecarFile.deleteOnExit();
+
+        Assertions.assertTrue(Sidecar.isFresh(sidecarFile, inputFile));
+        Assertions.assertSame(table, reader.openRedirectTableIfBuilt());
+        Assertions.assertEquals("в своєму репертуарі", table.resolve(source));
+        Assertions.assertEquals("в своєму репертуарі", table.resolve("репертуар"));
+        Assertions.assertEquals(null, table.resolve("петля1"));
+        Assertions.assertEquals(null, table.resolve("apple"));
+        Assertions.assertEquals(loop, reader.lookupFollowingRedirects("петля1"));
+        Assertions.assertEquals(batch.getDefinitions(),
+                reader.lookupWordsFollowingRedirects(batchWords, null).getDefinitions());
+
+        // With it, only the target's block is inflated.
+        reader.setBlockCacheSize(0);
+        reader.setBlockCacheSize(WapReader.DEFAULT_BLOCK_CACHE_SIZE);
+
+        long misses = reader.getBlockCache().getMisses();
+
+        Assertions.assertEquals(target, reader.lookupFollowingRedirects(source));
+        Assertions.assertEquals(misses + 1, reader.getBlockCache().getMisses());
+
+        reader.close();
+    }
+
+    @Test
+    void testWikiEntry() throws IOException
+    {
+        File appleFile = new File("src/test/resources/uk.apple.txt");
+        String appleText = new String(Files.readAllBytes(appleFile.toPath()),
+                StandardCharsets.UTF_8);
+
+        WikiEntry entry = new WikiEntry("Вступ\n" + appleText + "\n{{=fr=}}\n# [[pomme]]\n");
+
+        Assertions.assertEquals(Arrays.asList("", "en", "fr"), entry.getLanguages());
+
+        // Nothing is parsed until it's asked for, and then only that section.
+        WikiEntry.Section english = entry.getSection("en");
+
+        Assertions.assertFalse(english.isParsed());
+        Assertions.assertEquals(appleText.substring(appleText.indexOf('\n') + 1) + "\n",
+                english.getText());
+
+        List<WikiEntry.Heading> headings = english.getHeadings();
+
+        Assertions.assertTrue(english.isParsed());
+        Assertions.assertFalse(entry.getSection("fr").isParsed());
+        Assertions.assertEquals("Вимова", headings.get(1).getTitle());
+        Assertions.assertEquals(3, headings.get(1).getLevel());
+        Assertions.assertEquals("Іменник", headings.get(2).getTitle());
+        Assertions.assertEquals(Arrays.asList("[[яблуко]]", "[[яблуня]] (apple tree)"),
+                headings.get(2).getSenses());
+        Assertions.assertEquals("яблуко", headings.get(2).getLinks().get(0).getTarget());
+
+        // The file link at the top keeps its caption, and is told apart from word links.
+        WikiEntry.Link fileLink = headings.get(0).getLinks().get(0);
+
+        Assertions.assertEquals(0, headings.get(0).getLevel());
+        Assertions.assertEquals("A red apple.", fileLink.getLabel());
+        Assertions.assertTrue(fileLink.isNamespaced());
+        Assertions.assertFalse(headings.get(2).getLinks().get(0).isNamespaced());
+
+        Assertions.assertEquals("pomme", entry.getSection("fr").getLinks().get(0).getTarget());
+        Assertions.assertEquals(null, entry.getSection("de"));
+
+        // Parsed entries are reused for the same dictionary and word.
+        WikiEntryCache cache = new WikiEntryCache();
+
+        Assertions.assertTrue(cache.parse("uk", "apple", appleText) ==
+                cache.parse("uk", "apple", appleText));
+        Assertions.assertFalse(cache.parse("uk", "apple", appleText) ==
+                cache.parse("en", "apple", appleText));
+        Assertions.assertEquals(2, cache.getEntryCount());
+
+        cache.removeDictionary("uk");
+
+        Assertions.assertEquals(1, cache.getEntryCount());
+
+        cache.setCapacity(0);
+
+        Assertions.assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    void testLookupLanguages() throws IOException, DataFormatException
+    {
+        byte [] text = ("вступ\n{{=uk=}}\n# ук\n{{=en=}}\n# ен\n{{= fr =}}\n# фр")
+                .getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = ByteBuffer.wrap(text);
+
+        Assertions.assertEquals("{{=en=}}\n# ен\n{{= fr =}}\n# фр", WapReader.extractSections(
+                entry, new HashSet<>(Arrays.asList("en", "fr"))));
+        Assertions.assertEquals("{{=uk=}}\n# ук\n", WapReader.extractSections(
+                entry, Arrays.asList("uk")));
+        Assertions.assertEquals("вступ\n", WapReader.extractSections(entry, Arrays.asList("")));
+        Assertions.assertEquals("", WapReader.extractSections(entry, Arrays.asList("de", "u")));
+
+        // A view into the middle of a larger array works the same.
+        Assertions.assertEquals("{{=uk=}}\n# ук\n", WapReader.extractSections(
+                ByteBuffer.wrap(text, 6, text.length - 6), Arrays.asList("uk")));
+
+        WapReader reader = new WapReader(writeDictionary(sampleDefinitions()));
+        String english = reader.lookupLanguages("apple", Arrays.asList("en"));
+
+        Assertions.assertTrue(english.startsWith("{{=en=}}\n"));
+        Assertions.assertTrue(english.contains("# [[яблуко]]"));
+        Assertions.assertFalse(english.contains("[[pomme]]"));
+        Assertions.assertEquals("{{=fr=}}\n# [[pomme]]\n",
+                reader.lookupLanguages("apple", Arrays.asList("fr")));
+        Assertions.assertEquals("", reader.lookupLanguages("apple", Arrays.asList("xx")));
+
+        reader.close();
+    }
+
+    @Test
+    void testFullTextIndex() throws IOException, DataFormatException
+    {
+        HashMap<String, Integer> counts = new HashMap<>();
+
+        FullTextIndex.countTerms("Коров’як, 'ok' a [[яблуко]] і коров'як", counts);
+
+        Assertions.assertEquals(3, counts.size());
+        Assertions.assertEquals(2, (int) counts.get("коров'як"));
+        Assertions.assertEquals(1, (int) counts.get("ok"));
+        Assertions.assertEquals(1, (int) counts.get("яблуко"));
+
+        File wapFile = writeDictionary(sampleDefinitions());
+        File idxFile = new File(wapFile.getParentFile(), "uk.idx");
+
+        IdxReader words = new IdxReader(idxFile);
+        WapReader definitions = new WapReader(wapFile);
+        File sidecarFile = Sidecar.fileFor(wapFile, FullTextIndex.SIDECAR_KIND);
+        File postingsFile = Sidecar.fileFor(wapFile, FullTextIndex.POSTINGS_KIND);
+
+        sidecarFile.deleteOnExit();
+        postingsFile.deleteOnExit();
+
+        // A cancelled build leaves nothing behind.
+        Sidecar.Build cancelled = new Sidecar.Build();
+
+        cancelled.cancel();
+
+        Assertions.assertNull(FullTextIndex.openIfBuilt(words, definitions));
+        Assertions.assertThrows(InterruptedIOException.class,
+                () -> FullTextIndex.build(words, definitions, sidecarFile, cancelled));
+
+        String [] files = wapFile.getParentFile().list();
+
+        Arrays.sort(files);
+        Assertions.assertArrayEquals(new String [] {"uk.idx", "uk.wap"}, files);
+
+        FullTextIndex index = FullTextIndex.open(words, definitions);
+
+        Assertions.assertTrue(Sidecar.isFresh(sidecarFile, wapFile));
+        Assertions.assertTrue(FullTextIndex.isFresh(words, definitions));
+
+        // Every result has all the words in its definition.
+        List<String> results = index.search("Яблуко ВИМОВА", true, 20);
+
+        Assertions.assertTrue(results.contains("apple"));
+        Assertions.assertTrue(results.size() <= 20);
+
+        for (String word : results)
+        {
+            String definition = NormalizedIndex.fold(definitions.lookupWord(word));
+
+            Assertions.assertTrue(definition.contains("яблуко") && definition.contains("вимова"),
+                    word);
+        }
+
+        Assertions.assertEquals(0, index.search("вимова жжжжщщщщ", true, 20).size());
+        Assertions.assertTrue(index.search("вимова жжжжщщщщ", false, 20).contains("apple"));
+
+        // The top result comes first however many are asked for.
+        List<String> top = index.search("яблуко", false, 10);
+
+        Assertions.assertEquals(top.get(0), index.search("яблуко", false, 1).get(0));
+        Assertions.assertEquals(0, index.search("", false, 10).size());
+
+        // Stopping early gives the same results as reading the lists to the end.
+        for (String query : Arrays.asList("яблуко", "яблуко вимова", "слово номер"))
+        {
+            for (boolean matchAll : new boolean [] {true, false})
+            {
+                List<String> all = index.search(query, matchAll, words.countWords());
+
+                Assertions.assertEquals(all.subList(0, Math.min(10, all.size())),
+                        index.search(query, matchAll, 10), query);
+            }
+        }
+
+        // Built from many small runs, the index is the same.
+        File smallRunsFile = new File(sidecarFile.getPath() + ".small");
+        File smallPostingsFile = new File(postingsFile.getPath() + ".small");
+
+        smallRunsFile.deleteOnExit();
+        smallPostingsFile.deleteOnExit();
+        FullTextIndex.build(words, definitions, smallRunsFile, smallPostingsFile, 50,
+                new Sidecar.Build());
+
+        FullTextIndex smallRuns = new FullTextIndex(words, new IdxReader(smallRunsFile),
+                new BlockFile(smallPostingsFile));
+
+        Assertions.assertArrayEquals(Files.readAllBytes(postingsFile.toPath()),
+                Files.readAllBytes(smallPostingsFile.toPath()));
+        Assertions.assertEquals(index.search("яблуко вимова", false, 50),
+                smallRuns.search("яблуко вимова", false, 50));
+
+        smallRuns.close();
+
+        index.close();
+        definitions.close();
+        words.close();
+    }
+
+    @Test
+    void testLinkIndex() throws IOException, DataFormatException
+    {
+        byte [] text = ("# [[Яблуко]], [[яблуня|tree]] [[Файл:x.jpg|thumb]]\n[[en:apple]] " +
+                "[[сад#Noun]] [[broken\n]]").getBytes(StandardCharsets.UTF_8);
+        LinkedHashSet<String> targets = new LinkedHashSet<>();
+
+        LinkIndex.findTargets(text, 0, text.length, targets);
+
+        Assertions.assertEquals(Arrays.asList("яблуко", "яблуня", "сад"),
+                new ArrayList<>(targets));
+
+        File inputFile = writeDictionary(sampleDefinitions());
+        WapReader reader = new WapReader(inputFile);
+
+        Assertions.assertNull(reader.openLinkIndexIfBuilt());
+
+        List<String> words = reader.wordsLinkingTo("ЯБЛУКО", 100);
+        File sidecarFile = Sidecar.fileFor(inputFile, LinkIndex.SIDECAR_KIND);
+
+        sidecarFile.deleteOnExit();
+
+        Assertions.assertTrue(Sidecar.isFresh(sidecarFile, inputFile));
+        Assertions.assertEquals(words, reader.openLinkIndexIfBuilt().linkingTo("яблуко", 100));
+        Assertions.assertTrue(words.contains("apple"));
+        Assertions.assertTrue(words.contains("apple tree"));
+        Assertions.assertTrue(words.contains("слово7"));
+        Assertions.assertFalse(words.contains("слово8"));
+
+        for (String word : words)
+        {
+            Assertions.assertTrue(NormalizedIndex.fold(reader.lookupWord(word))
+                    .contains("яблуко"), word);
+        }
+
+        // Redirects aren't translations.
+        Assertions.assertFalse(reader.wordsLinkingTo("в своєму репертуарі", 100)
+                .contains("(бути) в своєму репертуарі"));
+        Assertions.assertEquals(0, reader.wordsLinkingTo("жжжжщщщщ", 100).size());
+
+        reader.close();
+    }
+
+    @Test
+    void testConcurrentLookup() throws Exception
+    {
+        File inputFile = writeDictionary(sampleDefinitions());
+
+        for (boolean memoryMapped : new boolean [] {false, true})
+        {
+            final WapReader reader = new WapReader(inputFile, memoryMapped);
+
+            // No cache, so every lookup reads its block from the file.
+            reader.setBlockCacheSize(0);
+
+            final String [] words = new String [] {"apple", "(бути) в своєму репертуарі",
+                    "\uD83D\uDF7F", "aaslkghaslkdghkashdglkasghl"};
+            final String [] expected = new String [words.length];
+
+            for (int i = 0; i < words.length; i += 1)
+            {
+                expected[i] = lookupOrNull(reader, words[i]);
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            ArrayList<Future<Void>> futures = new ArrayList<>();
+
+            for (int t = 0; t < 32; t += 1)
+            {
+                final int offset = t;
+
+                futures.add(executor.submit(() -> {
+                    for (int n = 0; n < 200; n += 1)
+                    {
+                        int i = (n + offset) % words.length;
+
+                        Assertions.assertEquals(expected[i], lookupOrNull(reader, words[i]));
+                    }
+
+                    return null;
+                }));
+            }
+
+            executor.shutdown();
+
+            for (Future<Void> future : futures)
+            {
+                future.get();
+            }
+
+            reader.close();
+        }
+    }
+
+    static String lookupOrNull(WapReader reader, String word)
+            throws IOException, DataFormatException
+    {
+        try
+        {
+            return reader.lookupWord(word);
+        }
+        catch (IllegalArgumentException err)
+        {
+            return null;
+        }
+    }
+
+    // The entries of a small dictionary shaped like the real one, whose uk.wap is too big to
+    // keep in the repository: translations with links and several language sections, a word
+    // outside the BMP, redirects (a chain and a loop), and a few hundred other words to fill
+    // the buckets.
+    static Map<String, String> sampleDefinitions()
+    {
+        LinkedHashMap<String, String> definitions = new LinkedHashMap<>();
+
+        definitions.put("apple", "{{=en=}}\n\n===Вимова===\n# [[яблуко]]\n" +
+                "# [[яблуня]] (apple tree)\n[[Файл:Apple.jpg|thumb]]\n{{=fr=}}\n# [[pomme]]\n");
+        definitions.put("apple tree", "{{=en=}}\n# [[яблуня]], [[Яблуко|яблучне]] дерево\n");
+        definitions.put("pear", "{{=en=}}\n===Вимова===\n# [[груша]]\n" +
+                "{{=uk=}}\n# не яблуко\n");
+        definitions.put("яблуко", "{{=uk=}}\n===Вимова===\n# плід яблуні; яблуко, яблуко\n" +
+                "{{=en=}}\n# [[apple]]\n");
+        definitions.put("в своєму репертуарі", "{{=uk=}}\n# бути собою\n");
+        definitions.put("(бути) в своєму репертуарі",
+                "#ПЕРЕНАПРАВЛЕННЯ [[в своєму репертуарі]]");
+        definitions.put("репертуар", "#REDIRECT [[(бути) в своєму репертуарі]]");
+        definitions.put("петля1", "#ПЕРЕНАПРАВЛЕННЯ [[петля2]]");
+        definitions.put("петля2", "#REDIRECT [[петля1]]");
+        definitions.put("\uD83D\uDF7F", "{{=mul=}}\n# алхімічний символ\n");
+
+        for (int i = 0; i < 300; i += 1)
+        {
+            StringBuilder definition = new StringBuilder("{{=uk=}}\n# слово номер " + i);
+
+            for (int n = 0; n < i % 4; n += 1)
+            {
+                definition.append(" яблуко");
+            }
+
+            if (i % 7 == 0)
+            {
+                definition.append("\n# [[яблуко]]");
+            }
+
+            definitions.put("слово" + i, definition.append('\n').toString());
+        }
+
+        return definitions;
+    }
+
+    // Writes the entries as a dictionary, uk.wap and its uk.idx word list, in a temporary
+    // folder, and returns the .wap file.
+    //
+    // The .wap is a run of raw-deflated buckets, then one (offset, key) record per bucket and
+    // the offset of the records. Each bucket holds the entries whose words hash to its key
+    // (see Key.MakeKey()), in word order, as "word\ndefinition", followed by the offsets of
+    // the entries and the offset of those.
+    static File writeDictionary(Map<String, String> definitions) throws IOException
+    {
+        File tempDir = Files.createTempDirectory("wordutil").toFile();
+        File wapFile = new File(tempDir, "uk.wap");
+        File idxFile = new File(tempDir, "uk.idx");
+        TreeMap<Integer, TreeMap<String, String>> buckets = new TreeMap<>();
+
+        tempDir.deleteOnExit();
+        wapFile.deleteOnExit();
+        idxFile.deleteOnExit();
+
+        for (Map.Entry<String, String> entry : definitions.entrySet())
+        {
+            int key = Key.MakeKey(entry.getKey());
+
+            if (!buckets.containsKey(key))
+            {
+                buckets.put(key, new TreeMap<>());
+            }
+
+            buckets.get(key).put(entry.getKey(), entry.getValue());
+        }
+
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(recordBytes);
+
+        for (Map.Entry<Integer, TreeMap<String, String>> bucket : buckets.entrySet())
+        {
+            ByteArrayOutputStream raw = new ByteArrayOutputStream();
+            DataOutputStream rawOutput = new DataOutputStream(raw);
+            ArrayList<Integer> offsets = new ArrayList<>();
+
+            for (Map.Entry<String, String> entry : bucket.getValue().entrySet())
+            {
+                offsets.add(rawOutput.size());
+                rawOutput.write((entry.getKey() + "\n" + entry.getValue())
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+
+            int offsetTable = rawOutput.size();
+
+            for (int offset : offsets)
+            {
+                rawOutput.writeInt(offset);
+            }
+
+            rawOutput.writeInt(offsetTable);
+
+            records.writeInt(blocks.size());
+            records.writeShort(bucket.getKey());
+
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+            DeflaterOutputStream block = new DeflaterOutputStream(blocks, deflater);
+
+            raw.writeTo(block);
+            block.finish();
+            deflater.end();
+        }
+
+        records.writeInt(blocks.size());
+
+        try (FileOutputStream output = new FileOutputStream(wapFile))
+        {
+            blocks.writeTo(output);
+            recordBytes.writeTo(output);
+        }
+
+        IdxWriter.write(idxFile, definitions.keySet());
+
+        return wapFile;
+    }
+
     @Test
     void testKey()
     {